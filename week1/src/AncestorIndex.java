@@ -0,0 +1,374 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Precomputed ancestor labels for a DAG. The label of a vertex v is the set of
+ * all vertices reachable from v (its ancestors, including v itself) together
+ * with their distance from v. A shortest ancestral path query then becomes a
+ * merge of two sorted labels instead of a breadth first search over the graph.
+ *
+ * Hypernym graphs are shallow, so labels stay small even though the graph has
+ * tens of thousands of vertices.
+ */
+public class AncestorIndex {
+
+    static final long NO_PATH = -1;
+
+    /**
+     * Labels of all vertices. Each entry packs an ancestor in the high 32 bits
+     * and its distance in the low 32 bits, so sorting the entries of a label
+     * orders them by ancestor and then by distance.
+     */
+    private final long[] labels;
+
+    /**
+     * The label of v is labels[labelStart[v]] .. labels[labelStart[v] +
+     * labelSize[v] - 1]
+     */
+    private final int[] labelStart, labelSize;
+
+    private final long buildTime;
+
+    // builds the index for the given DAG
+    public AncestorIndex(CompactDigraph G) {
+        long start = System.nanoTime();
+
+        int vertices = G.V();
+        labelStart = new int[vertices];
+        labelSize = new int[vertices];
+        int[] order = topologicalOrder(G, G.reverse(), null, null, vertices);
+        labels = label(G, order, vertices, new long[vertices * 4], 0,
+                labelStart, labelSize);
+        this.buildTime = System.nanoTime() - start;
+    }
+
+    private AncestorIndex(long[] labels, int[] labelStart, int[] labelSize,
+            long buildTime) {
+        this.labels = labels;
+        this.labelStart = labelStart;
+        this.labelSize = labelSize;
+        this.buildTime = buildTime;
+    }
+
+    /*
+     * Computes the labels of order[0..count), which must be sorted
+     * topologically, and stores them in all after the first used entries.
+     * Returns the labels array trimmed to its used length.
+     */
+    private static long[] label(CompactDigraph G, int[] order, int count,
+            long[] all, int used, int[] labelStart, int[] labelSize) {
+        // Scratch space used to merge the labels of parents
+        int vertices = G.V();
+        int[] bestDist = new int[vertices];
+        int[] seenBy = new int[vertices];
+        int[] touched = new int[vertices];
+        Arrays.fill(seenBy, -1);
+
+        for (int i = 0; i < count; i++) {
+            int v = order[i];
+            int size = 0;
+            seenBy[v] = v;
+            bestDist[v] = 0;
+            touched[size++] = v;
+            for (int e = G.adjStart(v); e < G.adjEnd(v); e++) {
+                int parent = G.adjAt(e);
+                int from = labelStart[parent];
+                int to = from + labelSize[parent];
+                for (int k = from; k < to; k++) {
+                    int a = ancestorOf(all[k]);
+                    int d = distanceOf(all[k]) + 1;
+                    if (seenBy[a] != v) {
+                        seenBy[a] = v;
+                        bestDist[a] = d;
+                        touched[size++] = a;
+                    } else if (d < bestDist[a]) {
+                        bestDist[a] = d;
+                    }
+                }
+            }
+            Arrays.sort(touched, 0, size);
+
+            if (used + size > all.length)
+                all = Arrays.copyOf(all, Math.max(all.length * 2, used + size));
+            labelStart[v] = used;
+            labelSize[v] = size;
+            for (int k = 0; k < size; k++)
+                all[used++] = pack(touched[k], bestDist[touched[k]]);
+        }
+        return Arrays.copyOf(all, used);
+    }
+
+    // index for G, which must be the graph this index was built for with new
+    // vertices and new edges out of the changed vertices added. Only the
+    // labels of the changed vertices and of their descendants are computed
+    // again. Throws if the new edges close a cycle.
+    public AncestorIndex update(CompactDigraph G, int[] changed) {
+        long start = System.nanoTime();
+
+        // The descendants of the changed vertices are the vertices whose
+        // ancestors changed
+        int vertices = G.V();
+        CompactDigraph reverse = G.reverse();
+        boolean[] affected = new boolean[vertices];
+        int[] queue = new int[vertices];
+        int count = 0;
+        for (int v : changed) {
+            if (!affected[v]) {
+                affected[v] = true;
+                queue[count++] = v;
+            }
+        }
+        for (int head = 0; head < count; head++) {
+            int v = queue[head];
+            for (int e = reverse.adjStart(v); e < reverse.adjEnd(v); e++) {
+                int child = reverse.adjAt(e);
+                if (!affected[child]) {
+                    affected[child] = true;
+                    queue[count++] = child;
+                }
+            }
+        }
+
+        // A new cycle runs through a changed vertex, and all of its vertices
+        // reach that vertex, so sorting the affected vertices finds it
+        int[] order = topologicalOrder(G, reverse, queue, affected, count);
+        int[] newStart = Arrays.copyOf(labelStart, vertices);
+        int[] newSize = Arrays.copyOf(labelSize, vertices);
+        long[] all = label(G, order, count, Arrays.copyOf(labels,
+                labels.length + 4 * count), labels.length, newStart, newSize);
+
+        // Old labels of affected vertices are left behind in the array,
+        // compact it once they take up more than half of it
+        long live = 0;
+        for (int v = 0; v < vertices; v++)
+            live += newSize[v];
+        if (2 * live < all.length) {
+            long[] compact = new long[(int) live];
+            int used = 0;
+            for (int v = 0; v < vertices; v++) {
+                System.arraycopy(all, newStart[v], compact, used, newSize[v]);
+                newStart[v] = used;
+                used += newSize[v];
+            }
+            all = compact;
+        }
+        return new AncestorIndex(all, newStart, newSize, System.nanoTime() - start);
+    }
+
+    // reads an index written by write(), starting at the position of data;
+    // throws IllegalArgumentException if data does not hold one
+    public AncestorIndex(ByteBuffer data) {
+        long start = System.nanoTime();
+        if (data.remaining() < 8)
+            throw new IllegalArgumentException("Truncated index");
+        int vertices = data.getInt(), labelCount = data.getInt();
+        if (vertices < 0 || labelCount < 0
+                || 8L * vertices + 8L * labelCount > data.remaining())
+            throw new IllegalArgumentException("Truncated index");
+        labelStart = new int[vertices];
+        labelSize = new int[vertices];
+        labels = new long[labelCount];
+        data.asIntBuffer().get(labelStart).get(labelSize);
+        data.position(data.position() + 8 * labelStart.length);
+        data.asLongBuffer().get(labels);
+        data.position(data.position() + 8 * labels.length);
+
+        for (int v = 0; v < vertices; v++)
+            if (labelStart[v] < 0 || labelSize[v] < 0
+                    || (long) labelStart[v] + labelSize[v] > labels.length)
+                throw new IllegalArgumentException("Corrupt index");
+        for (long entry : labels)
+            if (ancestorOf(entry) < 0 || ancestorOf(entry) >= vertices
+                    || distanceOf(entry) < 0)
+                throw new IllegalArgumentException("Corrupt index");
+        this.buildTime = System.nanoTime() - start;
+    }
+
+    // writes the labels in the format read by the ByteBuffer constructor
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(labelStart.length);
+        out.writeInt(labels.length);
+        for (int start : labelStart)
+            out.writeInt(start);
+        for (int size : labelSize)
+            out.writeInt(size);
+        for (long label : labels)
+            out.writeLong(label);
+    }
+
+    /*
+     * Kahn's algorithm on the hypernym direction: a vertex is emitted only
+     * after all of the vertices it points to, so its parents' labels are ready
+     * when it is processed. With a member array only the count vertices in
+     * vertices are sorted, and edges to other vertices are ignored; without
+     * one the whole graph is sorted.
+     */
+    private static int[] topologicalOrder(CompactDigraph G,
+            CompactDigraph reverse, int[] vertices, boolean[] member, int count) {
+        int[] pending = new int[G.V()];
+        int[] order = new int[count];
+        int head = 0, tail = 0;
+        for (int i = 0; i < count; i++) {
+            int v = vertices == null ? i : vertices[i];
+            for (int e = G.adjStart(v); e < G.adjEnd(v); e++)
+                if (member == null || member[G.adjAt(e)])
+                    pending[v]++;
+            if (pending[v] == 0)
+                order[tail++] = v;
+        }
+        while (head < tail) {
+            int v = order[head++];
+            for (int e = reverse.adjStart(v); e < reverse.adjEnd(v); e++) {
+                int child = reverse.adjAt(e);
+                if ((member == null || member[child]) && --pending[child] == 0)
+                    order[tail++] = child;
+            }
+        }
+        if (tail != count)
+            throw new IllegalArgumentException("Has cycles");
+        return order;
+    }
+
+    static long pack(int ancestor, int distance) {
+        return ((long) ancestor << 32) | distance;
+    }
+
+    static int ancestorOf(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    static int distanceOf(long entry) {
+        return (int) entry;
+    }
+
+    // is ancestor reachable from v?
+    public boolean isAncestor(int v, int ancestor) {
+        int from = labelStart[v], to = from + labelSize[v];
+        int k = Arrays.binarySearch(labels, from, to, pack(ancestor, 0));
+        if (k < 0)
+            k = -k - 1;
+        return k < to && ancestorOf(labels[k]) == ancestor;
+    }
+
+    // length of shortest ancestral path between v and w; -1 if no such path
+    public int length(int v, int w) {
+        long best = search(labels, labelStart[v], labelStart[v] + labelSize[v],
+                labels, labelStart[w], labelStart[w] + labelSize[w]);
+        return best == NO_PATH ? -1 : distanceOf(best);
+    }
+
+    // a common ancestor of v and w that participates in a shortest ancestral
+    // path; -1 if no such path
+    public int ancestor(int v, int w) {
+        long best = search(labels, labelStart[v], labelStart[v] + labelSize[v],
+                labels, labelStart[w], labelStart[w] + labelSize[w]);
+        return best == NO_PATH ? -1 : ancestorOf(best);
+    }
+
+    // length of shortest ancestral path between any vertex in v and any vertex
+    // in w; -1 if no such path
+    public int length(Iterable<Integer> v, Iterable<Integer> w) {
+        long best = search(v, w);
+        return best == NO_PATH ? -1 : distanceOf(best);
+    }
+
+    // a common ancestor that participates in shortest ancestral path; -1 if no
+    // such path
+    public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
+        long best = search(v, w);
+        return best == NO_PATH ? -1 : ancestorOf(best);
+    }
+
+    /*
+     * Merges the two labels and returns the best common ancestor packed with
+     * the path length through it. Ties are broken towards the smallest
+     * ancestor id.
+     */
+    long search(Iterable<Integer> vs, Iterable<Integer> ws) {
+        long[] a = ancestors(vs);
+        long[] b = ancestors(ws);
+        return search(a, 0, a.length, b, 0, b.length);
+    }
+
+    // length of shortest ancestral path between two sets of ancestors as
+    // returned by ancestors(); -1 if there is no common ancestor
+    public static int length(long[] a, long[] b) {
+        long best = search(a, 0, a.length, b, 0, b.length);
+        return best == NO_PATH ? -1 : distanceOf(best);
+    }
+
+    // packs the ancestors found by a search into the format returned by
+    // ancestors()
+    public static long[] ancestors(int[] vertices, int[] dist, int count) {
+        long[] ancestors = new long[count];
+        for (int k = 0; k < count; k++)
+            ancestors[k] = pack(vertices[k], dist[vertices[k]]);
+        Arrays.sort(ancestors);
+        return ancestors;
+    }
+
+    private static long search(long[] a, int i, int aEnd, long[] b, int j,
+            int bEnd) {
+        long best = NO_PATH;
+        int bestLength = Integer.MAX_VALUE;
+        while (i < aEnd && j < bEnd) {
+            int x = ancestorOf(a[i]);
+            int y = ancestorOf(b[j]);
+            if (x < y)
+                i++;
+            else if (x > y)
+                j++;
+            else {
+                int length = distanceOf(a[i]) + distanceOf(b[j]);
+                if (length < bestLength) {
+                    bestLength = length;
+                    best = pack(x, length);
+                }
+                i++;
+                j++;
+            }
+        }
+        return best;
+    }
+
+    // all ancestors of the vertices in vs with their shortest distance from
+    // vs; each entry packs the ancestor in its high 32 bits and the distance
+    // in its low 32 bits, sorted by ancestor
+    public long[] ancestors(Iterable<Integer> vs) {
+        int total = 0;
+        for (int v : vs)
+            total += labelSize[v];
+        long[] merged = new long[total];
+        int n = 0;
+        for (int v : vs) {
+            System.arraycopy(labels, labelStart[v], merged, n, labelSize[v]);
+            n += labelSize[v];
+        }
+        Arrays.sort(merged);
+
+        // Drop duplicate ancestors, the first one has the shortest distance
+        int size = 0;
+        for (int k = 0; k < n; k++)
+            if (size == 0 || ancestorOf(merged[size - 1]) != ancestorOf(merged[k]))
+                merged[size++] = merged[k];
+        return size == n ? merged : Arrays.copyOf(merged, size);
+    }
+
+    // number of vertices
+    public int V() {
+        return labelStart.length;
+    }
+
+    // time taken to build the index, or to read it from a snapshot, in
+    // nanoseconds
+    public long buildTime() {
+        return buildTime;
+    }
+
+    // approximate number of bytes used by the index
+    public long memoryFootprint() {
+        return 8L * labels.length + 4L * (labelStart.length + labelSize.length);
+    }
+}
@@ -1,114 +1,204 @@
-import java.util.HashSet;
-import java.util.Set;
-
+/**
+ * Two sided breadth first search for the shortest ancestral path.
+ */
 public class BreadthFirstAncestorSearch {
 
-    private Digraph graph;
+    private CompactDigraph graph;
 
     private int ancestor;
     private int bestAncestorLength;
 
     /**
-     * markedFromV[i] is true if i is reachable from v. markedFromW[i] is true
-     * if i is reachable from w.
+     * Every search gets a new epoch from epochs. i is reachable from v in the
+     * current search if markedFromV[i] == epoch, and from w if markedFromW[i]
+     * == epoch.
      */
-    private boolean[] markedFromV, markedFromW;
+    private final Epoch epochs;
+    private int epoch;
+    private int[] markedFromV, markedFromW;
 
     /**
      * distToV[i] is the shortest distance to i from v distToW[i] is the
-     * shortest distance to i from w
+     * shortest distance to i from w. Only valid if i is marked in the current
+     * epoch.
      */
     private int[] distToV, distToW;
 
     /**
-     * Vertices that are visited so far
+     * BFS queues for v and w. A vertex is enqueued at most once per side, so
+     * the queues never hold more than V vertices.
      */
-    private Set<Integer> visited;
+    private int[] vqueue, wqueue;
+    private int vhead, vtail, whead, wtail;
+    private int vdepth, wdepth;
 
-    public BreadthFirstAncestorSearch(Digraph graph) {
+    public BreadthFirstAncestorSearch(CompactDigraph graph) {
         this.graph = graph;
         this.ancestor = -1;
         this.bestAncestorLength = -1;
 
         int vertices = graph.V();
-        markedFromV = new boolean[vertices];
-        markedFromW = new boolean[vertices];
+        markedFromV = new int[vertices];
+        markedFromW = new int[vertices];
+        epochs = new Epoch(markedFromV, markedFromW);
         distToV = new int[vertices];
         distToW = new int[vertices];
-        visited = new HashSet<>();
-        for (int i = 0; i < vertices; i++) {
-            distToV[i] = Integer.MAX_VALUE;
-            distToW[i] = Integer.MAX_VALUE;
-        }
+        vqueue = new int[vertices];
+        wqueue = new int[vertices];
+    }
+
+    public void searchAncestor(int v, int w) {
+        // Clear previous state
+        clearState();
+
+        addSourceV(v);
+        if (addSourceW(w))
+            search(Integer.MAX_VALUE);
     }
 
     public void searchAncestor(Iterable<Integer> vs, Iterable<Integer> ws) {
+        searchAncestor(vs, ws, Integer.MAX_VALUE);
+    }
+
+    // searchAncestor(vs, ws), but stops before expanding a level of at least
+    // threshold vertices; returns false if it stopped, and continueOn() then
+    // finishes the search in parallel
+    public boolean searchAncestor(Iterable<Integer> vs, Iterable<Integer> ws,
+            int threshold) {
         // Clear previous state
         clearState();
 
-        Queue<Integer> vqueue = new Queue<>();
-        for (int i : vs) {
-            vqueue.enqueue(i);
-            markedFromV[i] = true;
-            visited.add(i);
-            distToV[i] = 0;
+        for (int i : vs)
+            addSourceV(i);
+        for (int i : ws)
+            if (!addSourceW(i))
+                return true;
+        return search(threshold);
+    }
+
+    /*
+     * Hands a search stopped by searchAncestor(vs, ws, threshold) over to
+     * parallel, with the vertices visited from each side, and returns the
+     * path it finds, packed as in AncestorIndex
+     */
+    long continueOn(ParallelAncestorSearch parallel, int threshold) {
+        parallel.clearState();
+        parallel.takeOver(true, vqueue, vhead, vtail, distToV);
+        parallel.takeOver(false, wqueue, whead, wtail, distToW);
+        return parallel.resume(vdepth, wdepth, ancestor, bestAncestorLength,
+                threshold);
+    }
+
+    // all vertices reachable from the vertices in vs with their distance, in
+    // the format of AncestorIndex.ancestors()
+    public long[] ancestors(Iterable<Integer> vs) {
+        clearState();
+
+        for (int i : vs)
+            addSourceV(i);
+        for (int depth = 1; vhead < vtail; depth++) {
+            int next = vtail;
+            vtail = expandLevel(vqueue, vhead, vtail, depth, distToV, distToW,
+                    markedFromV, markedFromW);
+            vhead = next;
         }
-        Queue<Integer> wqueue = new Queue<>();
-        for (int i : ws) {
-            if (markedFromV[i]) {
-                ancestor = i;
-                bestAncestorLength = 0;
-                return;
-            }
-            wqueue.enqueue(i);
-            markedFromW[i] = true;
-            visited.add(i);
-            distToW[i] = 0;
+        return AncestorIndex.ancestors(vqueue, distToV, vtail);
+    }
+
+    private void addSourceV(int i) {
+        if (markedFromV[i] == epoch)
+            return;
+        vqueue[vtail++] = i;
+        markedFromV[i] = epoch;
+        distToV[i] = 0;
+    }
+
+    /*
+     * Returns false if i is also a source on the v side, which ends the search.
+     */
+    private boolean addSourceW(int i) {
+        if (markedFromV[i] == epoch) {
+            ancestor = i;
+            bestAncestorLength = 0;
+            return false;
         }
+        if (markedFromW[i] == epoch)
+            return true;
+        wqueue[wtail++] = i;
+        markedFromW[i] = epoch;
+        distToW[i] = 0;
+        return true;
+    }
 
-        while (!vqueue.isEmpty() || !wqueue.isEmpty()) {
-            bfs(vqueue, distToV, distToW, markedFromV, markedFromW);
-            bfs(wqueue, distToW, distToV, markedFromW, markedFromV);
+    /*
+     * Level synchronous search that always expands the side with the smaller
+     * frontier. Both sides search towards the roots, so a common ancestor that
+     * has not been seen from both sides yet is still undiscovered from one of
+     * them, and is at least one level beyond that side's current depth. A side
+     * is done once its next level cannot beat the best path found, and the
+     * search ends when both sides are done. Returns false if it stopped
+     * instead at a level of at least threshold vertices.
+     */
+    private boolean search(int threshold) {
+        while (true) {
+            boolean expandV = vhead < vtail && vdepth + 1 < bestAncestorLength;
+            boolean expandW = whead < wtail && wdepth + 1 < bestAncestorLength;
+            if (expandV && (!expandW || vtail - vhead <= wtail - whead)) {
+                if (vtail - vhead >= threshold)
+                    return false;
+                int next = vtail;
+                vtail = expandLevel(vqueue, vhead, vtail, vdepth + 1, distToV,
+                        distToW, markedFromV, markedFromW);
+                vhead = next;
+                vdepth++;
+            } else if (expandW) {
+                if (wtail - whead >= threshold)
+                    return false;
+                int next = wtail;
+                wtail = expandLevel(wqueue, whead, wtail, wdepth + 1, distToW,
+                        distToV, markedFromW, markedFromV);
+                whead = next;
+                wdepth++;
+            } else {
+                return true;
+            }
         }
     }
 
-    private void bfs(Queue<Integer> queue, int[] dist, int[] otherDist,
-            boolean[] marked, boolean[] otherMarked) {
-        if (!queue.isEmpty()) {
-            int i = queue.dequeue();
-            for (int j : graph.adj(i)) {
-                if (!marked[j]) {
-                    dist[j] = dist[i] + 1;
-                    // Best ancestor cannot be in the path further
-                    if (dist[j] > bestAncestorLength)
-                        continue;
-
-                    // Is j a better ancestor?
-                    if (otherMarked[j]) {
-                        int length = dist[j] + otherDist[j];
-                        if (length < bestAncestorLength) {
-                            ancestor = j;
-                            bestAncestorLength = length;
-                        }
+    /*
+     * Visits the vertices adjacent from the frontier queue[head..tail), which
+     * are at the given depth, and returns the new tail of the queue.
+     */
+    private int expandLevel(int[] queue, int head, int tail, int depth,
+            int[] dist, int[] otherDist, int[] marked, int[] otherMarked) {
+        int next = tail;
+        for (int q = head; q < tail; q++) {
+            int i = queue[q];
+            for (int k = graph.adjStart(i), end = graph.adjEnd(i); k < end; k++) {
+                int j = graph.adjAt(k);
+                if (marked[j] == epoch)
+                    continue;
+                marked[j] = epoch;
+                dist[j] = depth;
+                queue[next++] = j;
+
+                // Is j a better ancestor?
+                if (otherMarked[j] == epoch) {
+                    int length = depth + otherDist[j];
+                    if (length < bestAncestorLength) {
+                        ancestor = j;
+                        bestAncestorLength = length;
                     }
-
-                    // Enqueue j for BFS
-                    marked[j] = true;
-                    visited.add(j);
-                    queue.enqueue(j);
                 }
             }
         }
+        return next;
     }
 
     private void clearState() {
-        for (int i : visited) {
-            markedFromV[i] = false;
-            markedFromW[i] = false;
-            distToV[i] = Integer.MAX_VALUE;
-            distToW[i] = Integer.MAX_VALUE;
-        }
-        visited.clear();
+        epoch = epochs.next();
+        vhead = vtail = whead = wtail = 0;
+        vdepth = wdepth = 0;
         this.ancestor = -1;
         this.bestAncestorLength = Integer.MAX_VALUE;
     }
@@ -0,0 +1,158 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable digraph in compressed sparse row form. The vertices adjacent
+ * from v are targets[offsets[v]] .. targets[offsets[v + 1] - 1], so walking
+ * the adjacency list of a vertex is a scan over a primitive array.
+ */
+public class CompactDigraph {
+
+    private final int[] offsets;
+    private final int[] targets;
+
+    // copies the given digraph
+    public CompactDigraph(Digraph G) {
+        int vertices = G.V();
+        offsets = new int[vertices + 1];
+        targets = new int[G.E()];
+        int k = 0;
+        for (int v = 0; v < vertices; v++) {
+            offsets[v] = k;
+            for (int w : G.adj(v))
+                targets[k++] = w;
+        }
+        offsets[vertices] = k;
+    }
+
+    // digraph with the given vertices and the edges from[i] -> to[i] for i <
+    // edges
+    public CompactDigraph(int vertices, int[] from, int[] to, int edges) {
+        offsets = new int[vertices + 1];
+        targets = new int[edges];
+        for (int i = 0; i < edges; i++) {
+            if (from[i] < 0 || from[i] >= vertices || to[i] < 0
+                    || to[i] >= vertices)
+                throw new IndexOutOfBoundsException("Edge " + from[i] + "->"
+                        + to[i]);
+            offsets[from[i] + 1]++;
+        }
+        for (int v = 0; v < vertices; v++)
+            offsets[v + 1] += offsets[v];
+
+        // Counting sort of the edges by their source
+        int[] next = Arrays.copyOf(offsets, vertices);
+        for (int i = 0; i < edges; i++)
+            targets[next[from[i]]++] = to[i];
+    }
+
+    // reads a digraph written by write(), starting at the position of data;
+    // throws IllegalArgumentException if data does not hold one
+    public CompactDigraph(ByteBuffer data) {
+        if (data.remaining() < 8)
+            throw new IllegalArgumentException("Truncated digraph");
+        int offsetCount = data.getInt(), targetCount = data.getInt();
+        if (offsetCount < 1 || targetCount < 0
+                || 4L * offsetCount + 4L * targetCount > data.remaining())
+            throw new IllegalArgumentException("Truncated digraph");
+        offsets = new int[offsetCount];
+        targets = new int[targetCount];
+        data.asIntBuffer().get(offsets).get(targets);
+        data.position(data.position() + 4 * (offsets.length + targets.length));
+
+        if (offsets[0] != 0 || offsets[V()] != targets.length)
+            throw new IllegalArgumentException("Corrupt digraph");
+        for (int v = 0; v < V(); v++)
+            if (offsets[v] > offsets[v + 1])
+                throw new IllegalArgumentException("Corrupt digraph");
+        for (int w : targets)
+            if (w < 0 || w >= V())
+                throw new IllegalArgumentException("Corrupt digraph");
+    }
+
+    private CompactDigraph(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    // number of vertices
+    public int V() {
+        return offsets.length - 1;
+    }
+
+    // number of edges
+    public int E() {
+        return targets.length;
+    }
+
+    // index of the first edge from v
+    public int adjStart(int v) {
+        return offsets[v];
+    }
+
+    // index past the last edge from v
+    public int adjEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    // target of the edge at the given index
+    public int adjAt(int edge) {
+        return targets[edge];
+    }
+
+    // number of edges from v
+    public int outdegree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    // this digraph grown to the given number of vertices, with the edges
+    // from[i] -> to[i] for i < edges added
+    public CompactDigraph addEdges(int vertices, int[] from, int[] to,
+            int edges) {
+        if (vertices < V())
+            throw new IllegalArgumentException("Cannot remove vertices");
+        int total = targets.length + edges;
+        int[] allFrom = new int[total];
+        int[] allTo = Arrays.copyOf(targets, total);
+        for (int v = 0; v < V(); v++)
+            Arrays.fill(allFrom, offsets[v], offsets[v + 1], v);
+        System.arraycopy(from, 0, allFrom, targets.length, edges);
+        System.arraycopy(to, 0, allTo, targets.length, edges);
+        return new CompactDigraph(vertices, allFrom, allTo, total);
+    }
+
+    // the digraph with all edges reversed
+    public CompactDigraph reverse() {
+        int vertices = V();
+        int[] reverseOffsets = new int[vertices + 1];
+        int[] reverseTargets = new int[targets.length];
+        for (int w : targets)
+            reverseOffsets[w + 1]++;
+        for (int v = 0; v < vertices; v++)
+            reverseOffsets[v + 1] += reverseOffsets[v];
+
+        int[] next = Arrays.copyOf(reverseOffsets, vertices);
+        for (int v = 0; v < vertices; v++)
+            for (int k = offsets[v]; k < offsets[v + 1]; k++)
+                reverseTargets[next[targets[k]]++] = v;
+        return new CompactDigraph(reverseOffsets, reverseTargets);
+    }
+
+    // writes the adjacency arrays in the format read by the ByteBuffer
+    // constructor
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(offsets.length);
+        out.writeInt(targets.length);
+        for (int offset : offsets)
+            out.writeInt(offset);
+        for (int target : targets)
+            out.writeInt(target);
+    }
+
+    // approximate number of bytes used by the adjacency arrays
+    public long memoryFootprint() {
+        return 4L * (offsets.length + targets.length);
+    }
+}
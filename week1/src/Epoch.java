@@ -0,0 +1,35 @@
+import java.util.Arrays;
+
+/**
+ * Epochs of a search that marks what it has visited by stamping int arrays
+ * with the epoch of the current query, so that starting a query only takes a
+ * new epoch and nothing has to be cleared. The arrays are cleared only when
+ * the epoch wraps around, since stamps from earlier epochs could then be
+ * mistaken for new ones.
+ *
+ * A search with such marks, or any other scratch state kept between queries
+ * (ParallelAncestorSearch clears its bitsets instead), must not be shared
+ * between threads: SAP and WordNet give each thread its own.
+ */
+public class Epoch {
+
+    private final int[][] marks;
+    private int epoch;
+
+    // epochs for a search that stamps the given arrays, which start out as
+    // all 0
+    public Epoch(int[]... marks) {
+        this.marks = marks;
+    }
+
+    // the epoch of a new query
+    public int next() {
+        epoch++;
+        if (epoch == Integer.MAX_VALUE) {
+            for (int[] m : marks)
+                Arrays.fill(m, 0);
+            epoch = 1;
+        }
+        return epoch;
+    }
+}
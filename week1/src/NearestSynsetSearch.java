@@ -0,0 +1,119 @@
+/**
+ * Breadth first search for the synsets nearest to a set of synsets, where the
+ * distance of a synset is the length of its shortest ancestral path to the
+ * set. A shortest ancestral path goes up along hypernyms to the common
+ * ancestor and then down along hyponyms, so the search runs over (synset,
+ * direction) states: an upward state can go on up or turn down, a downward
+ * state can only go on down. Synsets are reported one distance at a time, so
+ * a caller can stop as soon as it has seen enough of them.
+ */
+public class NearestSynsetSearch {
+
+    private final CompactDigraph graph, reverse;
+
+    /**
+     * State 2 * v is v reached going up, 2 * v + 1 is v reached going down.
+     * A state is visited in the current search if markedState[state] ==
+     * epoch, and a synset has been reported if markedSynset[v] == epoch.
+     * Every search gets a new epoch from epochs.
+     */
+    private final Epoch epochs;
+    private int epoch;
+    private final int[] markedState, markedSynset;
+
+    /**
+     * queue[head..tail) holds the states at the current distance
+     */
+    private final int[] queue;
+    private int head, tail;
+    private int distance;
+
+    /**
+     * found[0..foundCount) are the synsets first reached at the current
+     * distance
+     */
+    private final int[] found;
+    private int foundCount;
+
+    public NearestSynsetSearch(CompactDigraph graph, CompactDigraph reverse) {
+        this.graph = graph;
+        this.reverse = reverse;
+        int vertices = graph.V();
+        markedState = new int[2 * vertices];
+        markedSynset = new int[vertices];
+        epochs = new Epoch(markedState, markedSynset);
+        queue = new int[2 * vertices];
+        found = new int[vertices];
+    }
+
+    // starts a new search; the sources are reported by the first call to
+    // nextDistance(), at distance 0
+    public void start(Iterable<Integer> sources) {
+        epoch = epochs.next();
+        head = tail = 0;
+        distance = -1;
+        for (int v : sources)
+            visit(2 * v);
+    }
+
+    // moves to the next distance that reaches synsets not reported before;
+    // false if there are none left
+    public boolean nextDistance() {
+        foundCount = 0;
+        while (head < tail) {
+            if (distance >= 0)
+                expand();
+            distance++;
+            for (int q = head; q < tail; q++) {
+                int v = queue[q] >>> 1;
+                if (markedSynset[v] != epoch) {
+                    markedSynset[v] = epoch;
+                    found[foundCount++] = v;
+                }
+            }
+            if (foundCount > 0)
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * Replaces the states in the queue with the states one step further.
+     */
+    private void expand() {
+        int end = tail;
+        for (int q = head; q < end; q++) {
+            int state = queue[q];
+            int v = state >>> 1;
+            if ((state & 1) == 0) {
+                for (int e = graph.adjStart(v); e < graph.adjEnd(v); e++)
+                    visit(2 * graph.adjAt(e));
+            }
+            for (int e = reverse.adjStart(v); e < reverse.adjEnd(v); e++)
+                visit(2 * reverse.adjAt(e) + 1);
+        }
+        head = end;
+    }
+
+    private void visit(int state) {
+        if (markedState[state] != epoch) {
+            markedState[state] = epoch;
+            queue[tail++] = state;
+        }
+    }
+
+    // distance of the synsets found by the last call to nextDistance()
+    public int distance() {
+        return distance;
+    }
+
+    // number of synsets found by the last call to nextDistance()
+    public int foundCount() {
+        return foundCount;
+    }
+
+    // the i-th synset found by the last call to nextDistance()
+    public int found(int i) {
+        return found[i];
+    }
+}
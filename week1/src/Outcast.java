@@ -9,12 +9,13 @@ public class Outcast {
 
     // given an array of WordNet nouns, return an outcast
     public String outcast(String[] nouns) {
+        int[][] distances = wordnet.distances(nouns);
         int maxDistance = -1;
         String outcast = null;
         for (int i = 0; i < nouns.length; i++) {
             int distance = 0;
             for (int j = 0; j < nouns.length; j++)
-                distance += wordnet.distance(nouns[i], nouns[j]);
+                distance += distances[i][j];
 
             if (distance > maxDistance) {
                 maxDistance = distance;
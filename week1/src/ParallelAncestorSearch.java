@@ -0,0 +1,223 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The part of a shortest ancestral path search past its first large level. A
+ * BreadthFirstAncestorSearch starts the search and hands it over here, and
+ * like it this search expands the smaller of the two frontiers one level at a
+ * time, but a level with at least threshold vertices is split over a shared
+ * fork-join pool. Vertices are claimed through atomic visited bitsets so that
+ * each one is enqueued exactly once.
+ */
+public class ParallelAncestorSearch {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    /**
+     * Frontier slices below this size are expanded by a single task
+     */
+    private static final int SLICE = 256;
+
+    private static final long NONE = Long.MAX_VALUE;
+
+    private final CompactDigraph graph;
+    private int threshold;
+
+    /**
+     * Bit i of markedFromV is set if i is reachable from v, and the same for
+     * w. Only the bits of visited vertices are set, and they are cleared again
+     * at the start of the next search.
+     */
+    private final AtomicLongArray markedFromV, markedFromW;
+    private final int[] distToV, distToW;
+
+    /**
+     * Each vertex is enqueued at most once per side, so queue[0..tail) is also
+     * the list of visited vertices
+     */
+    private final int[] vqueue, wqueue;
+    private int vhead, vtail, whead, wtail;
+
+    public ParallelAncestorSearch(CompactDigraph G) {
+        this.graph = G;
+        int vertices = G.V();
+        int words = (vertices + 63) / 64;
+        markedFromV = new AtomicLongArray(words);
+        markedFromW = new AtomicLongArray(words);
+        distToV = new int[vertices];
+        distToW = new int[vertices];
+        vqueue = new int[vertices];
+        wqueue = new int[vertices];
+    }
+
+    private static boolean isMarked(AtomicLongArray marked, int i) {
+        return (marked.get(i >>> 6) & (1L << i)) != 0;
+    }
+
+    /*
+     * Sets the bit of i and returns true if this call set it.
+     */
+    private static boolean mark(AtomicLongArray marked, int i) {
+        int word = i >>> 6;
+        long bit = 1L << i;
+        while (true) {
+            long bits = marked.get(word);
+            if ((bits & bit) != 0)
+                return false;
+            if (marked.compareAndSet(word, bits, bits | bit))
+                return true;
+        }
+    }
+
+    /*
+     * Takes over one side (v if fromV) of a search started by a
+     * BreadthFirstAncestorSearch after clearState(): queue[0..tail) are the
+     * vertices it visited from that side, at the distances in dist, and
+     * queue[head..tail) is its frontier
+     */
+    void takeOver(boolean fromV, int[] queue, int head, int tail, int[] dist) {
+        AtomicLongArray marked = fromV ? markedFromV : markedFromW;
+        int[] ownQueue = fromV ? vqueue : wqueue;
+        int[] ownDist = fromV ? distToV : distToW;
+        for (int k = 0; k < tail; k++) {
+            int i = queue[k];
+            mark(marked, i);
+            ownDist[i] = dist[i];
+        }
+        System.arraycopy(queue, 0, ownQueue, 0, tail);
+        if (fromV) {
+            vhead = head;
+            vtail = tail;
+        } else {
+            whead = head;
+            wtail = tail;
+        }
+    }
+
+    /*
+     * Continues the search taken over by takeOver(), whose sides had reached
+     * the given depths and whose best path so far had the given ancestor (-1
+     * if none) and length. Returns the shortest ancestral path packed as in
+     * AncestorIndex, or AncestorIndex.NO_PATH. Levels of at least threshold
+     * vertices are expanded in parallel.
+     */
+    long resume(int vdepth, int wdepth, int ancestor, int length,
+            int threshold) {
+        this.threshold = Math.max(threshold, 1);
+        long best = ancestor == -1 ? NONE : (long) length << 32 | ancestor;
+        while (true) {
+            int bestLength = (int) (best >>> 32);
+            boolean expandV = vhead < vtail && vdepth + 1 < bestLength;
+            boolean expandW = whead < wtail && wdepth + 1 < bestLength;
+            Level level;
+            if (expandV && (!expandW || vtail - vhead <= wtail - whead)) {
+                level = new Level(vqueue, vhead, vtail, ++vdepth, distToV,
+                        distToW, markedFromV, markedFromW);
+                vhead = vtail;
+            } else if (expandW) {
+                level = new Level(wqueue, whead, wtail, ++wdepth, distToW,
+                        distToV, markedFromW, markedFromV);
+                whead = wtail;
+            } else {
+                break;
+            }
+
+            best = Math.min(best, level.expand());
+            if (level.queue == vqueue)
+                vtail = level.tail.get();
+            else
+                wtail = level.tail.get();
+        }
+
+        if (best == NONE)
+            return AncestorIndex.NO_PATH;
+        return AncestorIndex.pack((int) best, (int) (best >>> 32));
+    }
+
+    void clearState() {
+        for (int k = 0; k < vtail; k++)
+            markedFromV.set(vqueue[k] >>> 6, 0);
+        for (int k = 0; k < wtail; k++)
+            markedFromW.set(wqueue[k] >>> 6, 0);
+        vhead = vtail = whead = wtail = 0;
+    }
+
+    /**
+     * Expansion of one frontier. The best common ancestor found is returned
+     * as (length << 32) | ancestor so that the minimum is the best.
+     */
+    private class Level {
+        final int[] queue;
+        final int head, end, depth;
+        final int[] dist, otherDist;
+        final AtomicLongArray marked, otherMarked;
+        final AtomicInteger tail;
+
+        Level(int[] queue, int head, int end, int depth, int[] dist,
+                int[] otherDist, AtomicLongArray marked,
+                AtomicLongArray otherMarked) {
+            this.queue = queue;
+            this.head = head;
+            this.end = end;
+            this.depth = depth;
+            this.dist = dist;
+            this.otherDist = otherDist;
+            this.marked = marked;
+            this.otherMarked = otherMarked;
+            this.tail = new AtomicInteger(end);
+        }
+
+        long expand() {
+            if (end - head < threshold)
+                return expand(head, end);
+            return POOL.invoke(new Slice(this, head, end));
+        }
+
+        long expand(int from, int to) {
+            long best = NONE;
+            for (int q = from; q < to; q++) {
+                int i = queue[q];
+                for (int k = graph.adjStart(i), e = graph.adjEnd(i); k < e; k++) {
+                    int j = graph.adjAt(k);
+                    if (!mark(marked, j))
+                        continue;
+                    dist[j] = depth;
+                    queue[tail.getAndIncrement()] = j;
+
+                    // The other side is not expanded during this level
+                    if (isMarked(otherMarked, j)) {
+                        long length = depth + otherDist[j];
+                        best = Math.min(best, (length << 32) | j);
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+    private static class Slice extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Level level;
+        private final int from, to;
+
+        Slice(Level level, int from, int to) {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= SLICE)
+                return level.expand(from, to);
+            int mid = (from + to) >>> 1;
+            Slice left = new Slice(level, from, mid);
+            left.fork();
+            long right = new Slice(level, mid, to).compute();
+            return Math.min(left.join(), right);
+        }
+    }
+}
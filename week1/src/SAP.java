@@ -1,46 +1,152 @@
-import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Shortest ancestral paths in a digraph. A SAP is safe to use from several
+ * threads: the graph and the index are never modified after construction, and
+ * each thread runs its searches on its own BreadthFirstAncestorSearch. A
+ * query on vertex sets whose search reaches a large level is handed over to a
+ * ParallelAncestorSearch, which splits such levels over a fork-join pool.
+ */
 public class SAP {
 
-    private BreadthFirstAncestorSearch bfs;
+    private final CompactDigraph graph;
+    private final ThreadLocal<BreadthFirstAncestorSearch> searches;
+    private final ThreadLocal<ParallelAncestorSearch> parallelSearches;
+    private final AncestorIndex index;
+    private volatile int parallelThreshold = 4096;
 
     // constructor takes a digraph (not necessarily a DAG)
     public SAP(Digraph G) {
-        this.bfs = new BreadthFirstAncestorSearch(new Digraph(G));
+        this(G, false);
+    }
+
+    // constructor takes a digraph; if indexed, G must be a DAG and queries are
+    // answered from a precomputed ancestor index instead of a BFS
+    public SAP(Digraph G, boolean indexed) {
+        this(new CompactDigraph(G), indexed);
+    }
+
+    // constructor takes a compact digraph, which is immutable and is shared
+    // rather than copied
+    public SAP(CompactDigraph G, boolean indexed) {
+        this(G, indexed ? new AncestorIndex(G) : null);
+    }
+
+    // constructor takes a compact digraph and an ancestor index that was
+    // built for it, or null
+    public SAP(CompactDigraph G, AncestorIndex index) {
+        this.graph = G;
+        this.index = index;
+        this.searches = new ThreadLocal<BreadthFirstAncestorSearch>() {
+            @Override
+            protected BreadthFirstAncestorSearch initialValue() {
+                return new BreadthFirstAncestorSearch(graph);
+            }
+        };
+        this.parallelSearches = new ThreadLocal<ParallelAncestorSearch>() {
+            @Override
+            protected ParallelAncestorSearch initialValue() {
+                return new ParallelAncestorSearch(graph);
+            }
+        };
+    }
+
+    // the graph queries run on
+    public CompactDigraph graph() {
+        return graph;
+    }
+
+    // the ancestor index used for queries; null if not indexed
+    public AncestorIndex index() {
+        return index;
     }
 
     // length of shortest ancestral path between v and w; -1 if no such path
     public int length(int v, int w) {
-        List<Integer> vs = new ArrayList<>();
-        vs.add(v);
-        List<Integer> ws = new ArrayList<>();
-        ws.add(w);
-        return length(vs, ws);
+        if (index != null)
+            return index.length(v, w);
+        BreadthFirstAncestorSearch bfs = searches.get();
+        bfs.searchAncestor(v, w);
+        return bfs.ancestorPathLength();
     }
 
     // a common ancestor of v and w that participates in a shortest ancestral
     // path; -1 if no such path
     public int ancestor(int v, int w) {
-        List<Integer> vs = new ArrayList<>();
-        vs.add(v);
-        List<Integer> ws = new ArrayList<>();
-        ws.add(w);
-        return ancestor(vs, ws);
+        if (index != null)
+            return index.ancestor(v, w);
+        BreadthFirstAncestorSearch bfs = searches.get();
+        bfs.searchAncestor(v, w);
+        return bfs.ancestor();
     }
 
     // length of shortest ancestral path between any vertex in v and any vertex
     // in w; -1 if no such path
     public int length(Iterable<Integer> v, Iterable<Integer> w) {
-        bfs.searchAncestor(v, w);
-        return bfs.ancestorPathLength();
+        long path = path(v, w);
+        return path == AncestorIndex.NO_PATH ? -1 : AncestorIndex.distanceOf(path);
     }
 
     // a common ancestor that participates in shortest ancestral path; -1 if no
     // such path
     public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
-        bfs.searchAncestor(v, w);
-        return bfs.ancestor();
+        long path = path(v, w);
+        return path == AncestorIndex.NO_PATH ? -1 : AncestorIndex.ancestorOf(path);
+    }
+
+    // queries on vertex sets continue as a parallel BFS from the first level
+    // with at least this many vertices, and its later levels of that size are
+    // split over the pool; queries of an indexed SAP do not search
+    public void setParallelThreshold(int threshold) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("threshold <= 0");
+        this.parallelThreshold = threshold;
+    }
+
+    public int parallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /*
+     * Shortest ancestral path between any vertex in v and any vertex in w as
+     * one search, packed with AncestorIndex.pack(); AncestorIndex.NO_PATH if
+     * no such path.
+     */
+    long path(Iterable<Integer> v, Iterable<Integer> w) {
+        if (index != null)
+            return index.search(v, w);
+        // Levels are small near the sources, so the search starts on this
+        // thread and only goes parallel once a level is large
+        int threshold = parallelThreshold;
+        BreadthFirstAncestorSearch bfs = searches.get();
+        if (!bfs.searchAncestor(v, w, threshold))
+            return bfs.continueOn(parallelSearches.get(), threshold);
+        if (bfs.ancestor() == -1)
+            return AncestorIndex.NO_PATH;
+        return AncestorIndex.pack(bfs.ancestor(), bfs.ancestorPathLength());
+    }
+
+    // length of shortest ancestral path between every pair of the given vertex
+    // sets; -1 for pairs without such a path
+    public int[][] lengths(List<? extends Iterable<Integer>> sets) {
+        // One traversal per set finds all of its ancestors, after that every
+        // pair is a merge of two sorted ancestor lists
+        int n = sets.size();
+        long[][] ancestors = new long[n][];
+        for (int i = 0; i < n; i++) {
+            if (index != null)
+                ancestors[i] = index.ancestors(sets.get(i));
+            else
+                ancestors[i] = searches.get().ancestors(sets.get(i));
+        }
+
+        int[][] lengths = new int[n][n];
+        for (int i = 0; i < n; i++)
+            for (int j = i; j < n; j++) {
+                lengths[i][j] = AncestorIndex.length(ancestors[i], ancestors[j]);
+                lengths[j][i] = lengths[i][j];
+            }
+        return lengths;
     }
 
     // do unit testing of this class
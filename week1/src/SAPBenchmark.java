@@ -0,0 +1,85 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Measures SAP queries on a digraph: latency percentiles and bytes allocated
+ * per query by the querying thread. Queries are run on random pairs and on
+ * pairs of deep vertices, the tenth of the vertices with the most distant
+ * ancestors.
+ *
+ * Usage: java SAPBenchmark digraph.txt [queries]
+ */
+public class SAPBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static void run(String name, SAP sap, int[] vertices, int queries) {
+        // Warm up so that the JIT has compiled the search
+        Random random = new Random(42);
+        for (int i = 0; i < queries; i++)
+            sap.length(vertices[random.nextInt(vertices.length)],
+                    vertices[random.nextInt(vertices.length)]);
+
+        random = new Random(42);
+        long[] latency = new long[queries];
+        long thread = Thread.currentThread().getId();
+        long bytes = THREADS.getThreadAllocatedBytes(thread);
+        long checksum = 0;
+        for (int i = 0; i < queries; i++) {
+            int v = vertices[random.nextInt(vertices.length)];
+            int w = vertices[random.nextInt(vertices.length)];
+            long start = System.nanoTime();
+            checksum += sap.length(v, w);
+            latency[i] = System.nanoTime() - start;
+        }
+        bytes = THREADS.getThreadAllocatedBytes(thread) - bytes;
+
+        Arrays.sort(latency);
+        StdOut.printf("%-14s p50 %8d ns  p90 %8d ns  p99 %8d ns  max %8d ns"
+                + "  %6.1f bytes/query (checksum %d)\n", name,
+                latency[queries / 2], latency[queries * 9 / 10],
+                latency[queries * 99 / 100], latency[queries - 1],
+                (double) bytes / queries, checksum);
+    }
+
+    // the tenth of the vertices with the largest distance to an ancestor
+    private static int[] deepVertices(CompactDigraph G) {
+        BreadthFirstAncestorSearch bfs = new BreadthFirstAncestorSearch(G);
+        long[] byHeight = new long[G.V()];
+        for (int v = 0; v < G.V(); v++) {
+            int height = 0;
+            for (long a : bfs.ancestors(Collections.singletonList(v)))
+                height = Math.max(height, AncestorIndex.distanceOf(a));
+            byHeight[v] = ((long) height << 32) | v;
+        }
+        Arrays.sort(byHeight);
+        int[] deep = new int[Math.max(1, G.V() / 10)];
+        for (int i = 0; i < deep.length; i++)
+            deep[i] = (int) byHeight[byHeight.length - 1 - i];
+        return deep;
+    }
+
+    public static void main(String[] args) {
+        Digraph G = new Digraph(new In(args[0]));
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+        int[] all = new int[G.V()];
+        for (int v = 0; v < all.length; v++)
+            all[v] = v;
+        int[] deep = deepVertices(new CompactDigraph(G));
+
+        SAP bfs = new SAP(G);
+        run("bfs", bfs, all, queries);
+        run("bfs deep", bfs, deep, queries);
+        try {
+            SAP indexed = new SAP(G, true);
+            run("indexed", indexed, all, queries);
+            run("indexed deep", indexed, deep, queries);
+        } catch (IllegalArgumentException e) {
+            StdOut.println("indexed skipped, digraph has cycles");
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * A bounded cache of shortest ancestral path results. Keys and values are
+ * opaque longs chosen by the caller. When the cache is full, the least
+ * recently used (LRU) or the least frequently used (LFU) entry is evicted.
+ *
+ * All methods are synchronized so a cache can be shared by query threads.
+ */
+public class SAPCache {
+
+    public enum Policy {
+        LRU, LFU
+    }
+
+    public interface KeyFilter {
+        boolean matches(long key);
+    }
+
+    // value returned by get() for keys that are not cached
+    public static final long MISS = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final Policy policy;
+
+    /**
+     * LRU entries, in access order
+     */
+    private final LinkedHashMap<Long, Long> recent;
+
+    /**
+     * LFU entries. byFrequency.get(f) holds the keys used f times, oldest
+     * first, and minFrequency is the smallest f with keys.
+     */
+    private final Map<Long, long[]> counted;
+    private final Map<Integer, LinkedHashSet<Long>> byFrequency;
+    private int minFrequency;
+
+    private long hits, misses, evictions;
+
+    public SAPCache(int capacity, Policy policy) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity <= 0");
+        this.capacity = capacity;
+        this.policy = policy;
+        if (policy == Policy.LRU) {
+            this.recent = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Long> e) {
+                    if (size() <= SAPCache.this.capacity)
+                        return false;
+                    evictions++;
+                    return true;
+                }
+            };
+            this.counted = null;
+            this.byFrequency = null;
+        } else {
+            this.recent = null;
+            this.counted = new HashMap<>();
+            this.byFrequency = new HashMap<>();
+        }
+    }
+
+    // cached value for key; MISS if not cached
+    public synchronized long get(long key) {
+        if (policy == Policy.LRU) {
+            Long value = recent.get(key);
+            if (value == null) {
+                misses++;
+                return MISS;
+            }
+            hits++;
+            return value;
+        }
+
+        // The entry holds the value and the frequency
+        long[] entry = counted.get(key);
+        if (entry == null) {
+            misses++;
+            return MISS;
+        }
+        hits++;
+        touch(key, entry);
+        return entry[0];
+    }
+
+    public synchronized void put(long key, long value) {
+        if (policy == Policy.LRU) {
+            recent.put(key, value);
+            return;
+        }
+
+        long[] entry = counted.get(key);
+        if (entry != null) {
+            entry[0] = value;
+            touch(key, entry);
+            return;
+        }
+        if (counted.size() == capacity)
+            evict();
+        counted.put(key, new long[] { value, 1 });
+        frequency(1).add(key);
+        minFrequency = 1;
+    }
+
+    private void touch(long key, long[] entry) {
+        int f = (int) entry[1];
+        LinkedHashSet<Long> keys = byFrequency.get(f);
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            byFrequency.remove(f);
+            if (minFrequency == f)
+                minFrequency = f + 1;
+        }
+        entry[1] = f + 1;
+        frequency(f + 1).add(key);
+    }
+
+    private LinkedHashSet<Long> frequency(int f) {
+        LinkedHashSet<Long> keys = byFrequency.get(f);
+        if (keys == null) {
+            keys = new LinkedHashSet<>();
+            byFrequency.put(f, keys);
+        }
+        return keys;
+    }
+
+    private void evict() {
+        LinkedHashSet<Long> keys = byFrequency.get(minFrequency);
+        Iterator<Long> it = keys.iterator();
+        long key = it.next();
+        it.remove();
+        if (keys.isEmpty())
+            byFrequency.remove(minFrequency);
+        counted.remove(key);
+        evictions++;
+    }
+
+    // removes the entries whose keys match the filter; the counters are kept
+    public synchronized void removeIf(KeyFilter filter) {
+        if (policy == Policy.LRU) {
+            for (Iterator<Long> it = recent.keySet().iterator(); it.hasNext();)
+                if (filter.matches(it.next()))
+                    it.remove();
+            return;
+        }
+
+        for (Iterator<Map.Entry<Long, long[]>> it = counted.entrySet()
+                .iterator(); it.hasNext();) {
+            Map.Entry<Long, long[]> e = it.next();
+            if (filter.matches(e.getKey())) {
+                int f = (int) e.getValue()[1];
+                LinkedHashSet<Long> keys = byFrequency.get(f);
+                keys.remove(e.getKey());
+                if (keys.isEmpty())
+                    byFrequency.remove(f);
+                it.remove();
+            }
+        }
+        minFrequency = byFrequency.isEmpty() ? 0 : Collections.min(byFrequency
+                .keySet());
+    }
+
+    // removes all entries; the counters are kept
+    public synchronized void clear() {
+        if (policy == Policy.LRU) {
+            recent.clear();
+        } else {
+            counted.clear();
+            byFrequency.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return policy == Policy.LRU ? recent.size() : counted.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+}
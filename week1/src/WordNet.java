@@ -1,58 +1,117 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * The WordNet hypernym graph. Synsets, nouns and hypernyms can be added to a
+ * live WordNet. Every update builds a new immutable state and publishes it
+ * with one volatile write, so queries never wait for updates and always see
+ * either the state before an update or the state after it. Updates copy the
+ * arrays of the graph and its index, so they cost time linear in the size of
+ * the WordNet and are meant for a few changes at a time.
+ */
 public class WordNet {
 
-    private Map<Integer, String> idToNouns = new HashMap<>();
-    private Map<String, List<Integer>> nounToIds = new HashMap<>();
-    private SAP sap;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 
-    // constructor takes the name of the two input files
-    public WordNet(String synsetsFile, String hypernymsFile) {
-        int vertices = 0;
-        In synsetsIn = new In(synsetsFile);
-        String line = synsetsIn.readLine();
-        while (line != null) {
-            String[] parts = line.split(",");
-            int id = Integer.parseInt(parts[0]);
-            String[] nouns = parts[1].split(" ");
-            idToNouns.put(id, parts[1]);
-            for (String noun : nouns) {
-                List<Integer> ids = nounToIds.get(noun);
-                if (ids == null) {
-                    ids = new ArrayList<>();
-                    nounToIds.put(noun, ids);
+    /**
+     * Everything a query reads. A State is never modified once published.
+     */
+    private static class State {
+        /**
+         * synsets[id] is the synset (second field of synsets.txt) with that id
+         */
+        final String[] synsets;
+
+        /**
+         * Nouns with the same synsets share one synset id list. nounToSet maps
+         * a noun to the index of its list in idSets. Lists are only ever
+         * appended to idSets, so an index always denotes the same ids.
+         */
+        final Map<String, Integer> nounToSet;
+        final List<List<Integer>> idSets;
+
+        final SAP sap;
+
+        /**
+         * Searches for nearest(), created on first use since they need the
+         * reversed graph
+         */
+        private volatile ThreadLocal<NearestSynsetSearch> nearestSearches;
+
+        State(String[] synsets, Map<String, Integer> nounToSet,
+                List<List<Integer>> idSets, SAP sap) {
+            this.synsets = synsets;
+            this.nounToSet = nounToSet;
+            this.idSets = idSets;
+            this.sap = sap;
+        }
+
+        NearestSynsetSearch nearestSearch() {
+            ThreadLocal<NearestSynsetSearch> searches = nearestSearches;
+            if (searches == null) {
+                synchronized (this) {
+                    if (nearestSearches == null) {
+                        final CompactDigraph graph = sap.graph();
+                        final CompactDigraph reverse = graph.reverse();
+                        nearestSearches = new ThreadLocal<NearestSynsetSearch>() {
+                            @Override
+                            protected NearestSynsetSearch initialValue() {
+                                return new NearestSynsetSearch(graph, reverse);
+                            }
+                        };
+                    }
+                    searches = nearestSearches;
                 }
-                ids.add(id);
             }
-            vertices++;
-            line = synsetsIn.readLine();
+            return searches.get();
         }
-        synsetsIn.close();
-
-        Digraph graph = new Digraph(vertices);
-        In hypernymsIn = new In(hypernymsFile);
-        line = hypernymsIn.readLine();
-        while (line != null) {
-            String[] parts = line.split(",");
-            int id = Integer.parseInt(parts[0]);
-
-            // Form the edges
-            for (int i = 1; i < parts.length; i++) {
-                int parent = Integer.parseInt(parts[i]);
-                graph.addEdge(id, parent);
-            }
+    }
+
+    private volatile State state;
+    private volatile SAPCache cache;
 
-            line = hypernymsIn.readLine();
+    // constructor takes the name of the two input files
+    public WordNet(String synsetsFile, String hypernymsFile) {
+        WordNetLoader loader = new WordNetLoader(synsetsFile, hypernymsFile);
+        String[] synsets = loader.synsets();
+        int vertices = synsets.length;
+        Map<String, List<Integer>> nounToIds = loader.nounToIds();
+
+        Map<String, Integer> nounToSet = new HashMap<>(2 * nounToIds.size());
+        List<List<Integer>> idSets = new ArrayList<>();
+        Map<List<Integer>, Integer> sets = new HashMap<>(nounToIds.size());
+        for (Map.Entry<String, List<Integer>> e : nounToIds.entrySet()) {
+            Integer set = sets.get(e.getValue());
+            if (set == null) {
+                set = idSets.size();
+                idSets.add(Collections.unmodifiableList(e.getValue()));
+                sets.put(e.getValue(), set);
+            }
+            nounToSet.put(e.getKey(), set);
         }
-        hypernymsIn.close();
+
+        CompactDigraph graph = new CompactDigraph(vertices,
+                loader.from(), loader.to(), loader.edges());
 
         // Is this a rooted DAG?
         boolean rootFound = false;
         for (int i = 0; i < vertices; i++) {
-            if (!graph.adj(i).iterator().hasNext()) {
+            if (graph.outdegree(i) == 0) {
                 if (!rootFound)
                     rootFound = true;
                 else
@@ -61,40 +120,380 @@ public class WordNet {
         }
         if (!rootFound)
             throw new IllegalArgumentException("No root found");
-        DirectedCycle dc = new DirectedCycle(graph);
-        if (dc.hasCycle())
-            throw new IllegalArgumentException("Has cycles");
 
-        this.sap = new SAP(graph);
+        // Building the ancestor index sorts the graph topologically and
+        // throws if it has cycles
+        this.state = new State(synsets, nounToSet, idSets, new SAP(graph, true));
+    }
+
+    private WordNet(State state) {
+        this.state = state;
+    }
+
+    // adds a synset (nouns separated by single spaces, as in synsets.txt)
+    // with the given hypernyms and returns its id
+    public synchronized int addSynset(String synset, int... hypernyms) {
+        if (synset == null)
+            throw new NullPointerException();
+        if (hypernyms.length == 0)
+            throw new IllegalArgumentException("Not connected");
+        // A noun repeated in the synset is added once
+        Set<String> nouns = new LinkedHashSet<>();
+        for (String noun : synset.split(" ", -1)) {
+            checkNoun(noun);
+            nouns.add(noun);
+        }
+
+        // The new synset reaches the root through its hypernyms, and nothing
+        // reaches the new synset, so the graph stays a rooted DAG
+        State s = state;
+        int id = s.synsets.length;
+        int[] from = new int[hypernyms.length];
+        int[] to = new int[hypernyms.length];
+        for (int i = 0; i < hypernyms.length; i++) {
+            checkSynset(s, hypernyms[i]);
+            from[i] = id;
+            to[i] = hypernyms[i];
+        }
+        CompactDigraph graph = s.sap.graph().addEdges(id + 1, from, to,
+                hypernyms.length);
+        AncestorIndex index = s.sap.index().update(graph, new int[] { id });
+
+        String[] synsets = Arrays.copyOf(s.synsets, id + 1);
+        synsets[id] = synset;
+        Map<String, Integer> nounToSet = new HashMap<>(s.nounToSet);
+        List<List<Integer>> idSets = new ArrayList<>(s.idSets);
+        for (String noun : nouns)
+            addId(nounToSet, idSets, noun, id);
+
+        // No existing synset got new ancestors, so cached paths stay valid
+        state = new State(synsets, nounToSet, idSets, new SAP(graph, index));
+        return id;
+    }
+
+    // adds the noun to the synset with the given id
+    public synchronized void addNoun(String noun, int synset) {
+        if (noun == null)
+            throw new NullPointerException();
+        checkNoun(noun);
+        State s = state;
+        checkSynset(s, synset);
+        Integer set = s.nounToSet.get(noun);
+        if (set != null && s.idSets.get(set).contains(synset))
+            return;
+
+        String[] synsets = s.synsets.clone();
+        synsets[synset] = synsets[synset] + " " + noun;
+        Map<String, Integer> nounToSet = new HashMap<>(s.nounToSet);
+        List<List<Integer>> idSets = new ArrayList<>(s.idSets);
+        addId(nounToSet, idSets, noun, synset);
+        state = new State(synsets, nounToSet, idSets, s.sap);
+    }
+
+    // adds an edge from synset to hypernym; throws if it would close a cycle
+    public synchronized void addHypernym(int synset, int hypernym) {
+        State s = state;
+        checkSynset(s, synset);
+        checkSynset(s, hypernym);
+
+        // Every synset reaches the root, so an edge out of the root always
+        // closes a cycle and the root stays the only synset without hypernyms
+        CompactDigraph graph = s.sap.graph().addEdges(s.synsets.length,
+                new int[] { synset }, new int[] { hypernym }, 1);
+        final AncestorIndex index = s.sap.index().update(graph,
+                new int[] { synset });
+        State updated = new State(s.synsets, s.nounToSet, s.idSets,
+                new SAP(graph, index));
+
+        SAPCache cache = this.cache;
+        if (cache == null) {
+            state = updated;
+            return;
+        }
+
+        // Only paths from the descendants of synset can have changed. They
+        // are cleared and the new state published under the cache lock, so no
+        // query finds a stale entry with the new state or caches one after
+        final boolean[] stale = new boolean[s.idSets.size()];
+        for (int i = 0; i < stale.length; i++)
+            for (int id : s.idSets.get(i))
+                if (index.isAncestor(id, synset))
+                    stale[i] = true;
+        synchronized (cache) {
+            cache.removeIf(new SAPCache.KeyFilter() {
+                @Override
+                public boolean matches(long key) {
+                    return stale[(int) (key >>> 32)] || stale[(int) key];
+                }
+            });
+            state = updated;
+        }
+    }
+
+    private static void checkNoun(String noun) {
+        if (noun.isEmpty() || noun.contains(" "))
+            throw new IllegalArgumentException("Not a noun: " + noun);
+    }
+
+    private static void checkSynset(State s, int id) {
+        if (id < 0 || id >= s.synsets.length)
+            throw new IllegalArgumentException("No synset " + id);
+    }
+
+    /*
+     * Gives the noun a new id list with id added. The old list is left in
+     * place, other nouns and cache keys may still refer to it.
+     */
+    private static void addId(Map<String, Integer> nounToSet,
+            List<List<Integer>> idSets, String noun, int id) {
+        Integer set = nounToSet.get(noun);
+        List<Integer> ids = new ArrayList<>();
+        if (set != null)
+            ids.addAll(idSets.get(set));
+        ids.add(id);
+        nounToSet.put(noun, idSets.size());
+        idSets.add(Collections.unmodifiableList(ids));
+    }
+
+    /*
+     * Snapshot layout, all numbers big endian:
+     * 
+     * magic, number of synsets, number of id sets, number of nouns
+     * 
+     * the hypernym graph (CompactDigraph.write) and the ancestor index
+     * (AncestorIndex.write)
+     * 
+     * for each id set: its size followed by the synset ids
+     * 
+     * for each synset: its length in bytes followed by its UTF-8 bytes
+     * 
+     * for each noun: its id set, its length in bytes and its UTF-8 bytes
+     */
+    private static final int SNAPSHOT_MAGIC = 0x574e5331;
+
+    // writes the built WordNet to a binary snapshot that load() can read
+    public void save(String snapshotFile) {
+        State s = state;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(snapshotFile)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(s.synsets.length);
+            out.writeInt(s.idSets.size());
+            out.writeInt(s.nounToSet.size());
+            s.sap.graph().write(out);
+            s.sap.index().write(out);
+            for (List<Integer> ids : s.idSets) {
+                out.writeInt(ids.size());
+                for (int id : ids)
+                    out.writeInt(id);
+            }
+            for (String synset : s.synsets)
+                writeString(out, synset);
+            for (Map.Entry<String, Integer> e : s.nounToSet.entrySet()) {
+                out.writeInt(e.getValue());
+                writeString(out, e.getKey());
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write "
+                    + snapshotFile, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // reads a count of items of at least bytesEach bytes each, checking that
+    // that many could still follow in data
+    private static int readCount(ByteBuffer data, int bytesEach) {
+        if (data.remaining() < 4)
+            throw new IllegalArgumentException("Truncated WordNet snapshot");
+        int count = data.getInt();
+        if (count < 0 || (long) count * bytesEach > data.remaining())
+            throw new IllegalArgumentException("Truncated WordNet snapshot");
+        return count;
+    }
+
+    // reads an index into an array of the given length
+    private static int readIndex(ByteBuffer data, int length) {
+        if (data.remaining() < 4)
+            throw new IllegalArgumentException("Truncated WordNet snapshot");
+        int index = data.getInt();
+        if (index < 0 || index >= length)
+            throw new IllegalArgumentException("Corrupt WordNet snapshot");
+        return index;
+    }
+
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[readCount(data, 1)];
+        data.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    // reads a WordNet from a snapshot written by save(); the file is memory
+    // mapped to read it, but the WordNet is built from copies on the heap, so
+    // processes loading the same snapshot do not share it. Throws
+    // IllegalArgumentException if the file is not a whole snapshot.
+    public static WordNet load(String snapshotFile) {
+        ByteBuffer data;
+        try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r");
+                FileChannel channel = raf.getChannel()) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read "
+                    + snapshotFile, e);
+        }
+        if (data.remaining() < 4 || data.getInt() != SNAPSHOT_MAGIC)
+            throw new IllegalArgumentException("Not a WordNet snapshot");
+
+        // Each synset, id set and noun takes at least 4, 4 and 8 bytes
+        String[] synsets = new String[readCount(data, 4)];
+        int sets = readCount(data, 4);
+        int nouns = readCount(data, 8);
+        CompactDigraph graph = new CompactDigraph(data);
+        AncestorIndex index = new AncestorIndex(data);
+        if (graph.V() != synsets.length || index.V() != synsets.length)
+            throw new IllegalArgumentException("Corrupt WordNet snapshot");
+
+        List<List<Integer>> idSets = new ArrayList<>(sets);
+        for (int i = 0; i < sets; i++) {
+            Integer[] ids = new Integer[readCount(data, 4)];
+            for (int k = 0; k < ids.length; k++)
+                ids[k] = readIndex(data, synsets.length);
+            idSets.add(Collections.unmodifiableList(Arrays.asList(ids)));
+        }
+        for (int i = 0; i < synsets.length; i++)
+            synsets[i] = readString(data);
+        Map<String, Integer> nounToSet = new HashMap<>(2 * nouns);
+        for (int i = 0; i < nouns; i++) {
+            int set = readIndex(data, sets);
+            nounToSet.put(readString(data), set);
+        }
+        if (data.hasRemaining())
+            throw new IllegalArgumentException("Corrupt WordNet snapshot");
+        return new WordNet(new State(synsets, nounToSet, idSets, new SAP(graph,
+                index)));
+    }
+
+    // caches the results of distance() and sap(); null turns caching off
+    public void setCache(SAPCache cache) {
+        this.cache = cache;
+    }
+
+    // the cache used for distance() and sap(); null if there is none
+    public SAPCache cache() {
+        return cache;
     }
 
     // returns all WordNet nouns
     public Iterable<String> nouns() {
-        return nounToIds.keySet();
+        return state.nounToSet.keySet();
     }
 
     // is the word a WordNet noun?
     public boolean isNoun(String word) {
         if (word == null)
             throw new NullPointerException();
-        return nounToIds.containsKey(word);
+        return state.nounToSet.containsKey(word);
+    }
+
+    private static int setOf(State s, String noun) {
+        if (noun == null)
+            throw new NullPointerException();
+        Integer set = s.nounToSet.get(noun);
+        if (set == null)
+            throw new IllegalArgumentException();
+        return set;
+    }
+
+    /*
+     * Shortest ancestral path between the synsets of the two nouns, packed as
+     * in AncestorIndex. Goes through the cache if there is one; the key is the
+     * unordered pair of synset id lists, so nouns with the same synsets share
+     * entries.
+     */
+    private long path(State s, String nounA, String nounB) {
+        int a = setOf(s, nounA);
+        int b = setOf(s, nounB);
+        SAPCache cache = this.cache;
+        if (cache == null)
+            return s.sap.path(s.idSets.get(a), s.idSets.get(b));
+
+        long key = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+        long path = cache.get(key);
+        if (path == SAPCache.MISS) {
+            path = s.sap.path(s.idSets.get(a), s.idSets.get(b));
+
+            // addHypernym() clears stale entries and publishes the new state
+            // under the cache lock, so a path of an old state is not cached
+            // once its entries are cleared
+            synchronized (cache) {
+                if (state == s)
+                    cache.put(key, path);
+            }
+        }
+        return path;
     }
 
     // distance between nounA and nounB (defined below)
     public int distance(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB))
-            throw new IllegalArgumentException();
-        return this.sap.length(nounToIds.get(nounA), nounToIds.get(nounB));
+        long path = path(state, nounA, nounB);
+        return path == AncestorIndex.NO_PATH ? -1 : AncestorIndex.distanceOf(path);
+    }
+
+    // distance between every pair of the given nouns
+    public int[][] distances(String[] nouns) {
+        State s = state;
+        List<List<Integer>> ids = new ArrayList<>(nouns.length);
+        for (String noun : nouns)
+            ids.add(s.idSets.get(setOf(s, noun)));
+        return s.sap.lengths(ids);
+    }
+
+    // the k nouns nearest to the given noun by distance(), nearest first and
+    // ties in alphabetical order; the noun itself is not included
+    public List<String> nearest(String noun, int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("k < 0");
+        State s = state;
+        List<Integer> ids = s.idSets.get(setOf(s, noun));
+        List<String> nearest = new ArrayList<>(Math.min(k, 1024));
+        if (k == 0)
+            return nearest;
+
+        // Synsets come out one distance at a time, and a noun is first seen
+        // through its nearest synset. Nouns at the distance that fills the
+        // list are sorted so that the cut does not depend on graph order.
+        Set<String> seen = new HashSet<>();
+        seen.add(noun);
+        NearestSynsetSearch search = s.nearestSearch();
+        search.start(ids);
+        List<String> atDistance = new ArrayList<>();
+        while (nearest.size() < k && search.nextDistance()) {
+            atDistance.clear();
+            for (int i = 0; i < search.foundCount(); i++)
+                for (String n : s.synsets[search.found(i)].split(" "))
+                    if (seen.add(n))
+                        atDistance.add(n);
+            Collections.sort(atDistance);
+            int take = Math.min(atDistance.size(), k - nearest.size());
+            nearest.addAll(atDistance.subList(0, take));
+        }
+        return nearest;
     }
 
     // a synset (second field of synsets.txt) that is the common ancestor of
     // nounA and nounB
     // in a shortest ancestral path (defined below)
     public String sap(String nounA, String nounB) {
-        if (!isNoun(nounA) || !isNoun(nounB))
-            throw new IllegalArgumentException();
-        int ancestor = this.sap.ancestor(nounToIds.get(nounA), nounToIds.get(nounB));
-        return idToNouns.get(ancestor);
+        State s = state;
+        long path = path(s, nounA, nounB);
+        if (path == AncestorIndex.NO_PATH)
+            return null;
+        return s.synsets[AncestorIndex.ancestorOf(path)];
     }
 
     // do unit testing of this class
@@ -106,6 +505,9 @@ public class WordNet {
                         nounB, wn.distance(nounA, nounB));
         }*/
         WordNet wn = new WordNet("wordnet/synsets.txt", "wordnet/hypernyms.txt");
+        AncestorIndex index = wn.state.sap.index();
+        StdOut.printf("index built in %d ms, %d bytes\n",
+                index.buildTime() / 1000000, index.memoryFootprint());
         while (!StdIn.isEmpty()) {
             String nounA = StdIn.readString();
             String nounB = StdIn.readString();
@@ -0,0 +1,57 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Measures how long it takes to build a WordNet, and to load it back from a
+ * snapshot, and the peak heap used while doing so.
+ *
+ * Usage: java WordNetBenchmark synsets.txt hypernyms.txt [runs]
+ */
+public class WordNetBenchmark {
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        return peak;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        WordNet wordnet = null;
+        for (int run = 1; run <= runs; run++) {
+            System.gc();
+            resetPeakHeap();
+            long start = System.nanoTime();
+            wordnet = new WordNet(args[0], args[1]);
+            long time = System.nanoTime() - start;
+            StdOut.printf("run %d: startup %6d ms, peak heap %6d KB (%s)\n",
+                    run, time / 1000000, peakHeap() / 1024,
+                    wordnet.isNoun("entity") ? "entity found" : "no entity");
+        }
+
+        File snapshot = File.createTempFile("wordnet", ".snapshot");
+        snapshot.deleteOnExit();
+        wordnet.save(snapshot.getPath());
+        for (int run = 1; run <= runs; run++) {
+            System.gc();
+            resetPeakHeap();
+            long start = System.nanoTime();
+            wordnet = WordNet.load(snapshot.getPath());
+            long time = System.nanoTime() - start;
+            StdOut.printf("run %d: snapshot load %6d ms, peak heap %6d KB (%d KB file)\n",
+                    run, time / 1000000, peakHeap() / 1024,
+                    snapshot.length() / 1024);
+        }
+    }
+}
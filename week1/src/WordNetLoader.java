@@ -0,0 +1,195 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads synsets.txt and hypernyms.txt. The files are memory mapped and parsed
+ * byte by byte, without splitting lines into strings first. A first pass
+ * counts the lines so that the tables can be allocated at their final size.
+ */
+public class WordNetLoader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private String[] synsets;
+    private Map<String, List<Integer>> nounToIds;
+
+    private int edges;
+    private int[] from, to;
+
+    public WordNetLoader(String synsetsFile, String hypernymsFile) {
+        readSynsets(map(synsetsFile));
+        readHypernyms(map(hypernymsFile));
+    }
+
+    private static ByteBuffer map(String name) {
+        File file = new File(name);
+        if (!file.isFile()) {
+            // Not a local file, In also knows about URLs and the classpath
+            In in = new In(name);
+            ByteBuffer data = ByteBuffer.wrap(in.readAll().getBytes(UTF8));
+            in.close();
+            return data;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + name, e);
+        }
+    }
+
+    private static int countLines(ByteBuffer data) {
+        int lines = 0;
+        int limit = data.limit();
+        for (int i = 0; i < limit; i++)
+            if (data.get(i) == '\n')
+                lines++;
+        if (limit > 0 && data.get(limit - 1) != '\n')
+            lines++;
+        return lines;
+    }
+
+    /*
+     * Parses the number starting at data[pos] into value[0] and returns the
+     * position after it.
+     */
+    private static int parseInt(ByteBuffer data, int pos, int[] value) {
+        int limit = data.limit();
+        int n = 0;
+        int start = pos;
+        while (pos < limit) {
+            int digit = data.get(pos) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+            n = n * 10 + digit;
+            pos++;
+        }
+        if (pos == start)
+            throw new IllegalArgumentException("Number expected at byte " + pos);
+        value[0] = n;
+        return pos;
+    }
+
+    private static int skipLine(ByteBuffer data, int pos) {
+        int limit = data.limit();
+        while (pos < limit && data.get(pos) != '\n')
+            pos++;
+        return pos + 1;
+    }
+
+    private static String decode(ByteBuffer data, int start, int end,
+            byte[] scratch) {
+        int length = end - start;
+        for (int i = 0; i < length; i++)
+            scratch[i] = data.get(start + i);
+        return new String(scratch, 0, length, UTF8);
+    }
+
+    private void readSynsets(ByteBuffer data) {
+        int vertices = countLines(data);
+        synsets = new String[vertices];
+        nounToIds = new HashMap<>(2 * vertices);
+
+        int[] value = new int[1];
+        byte[] scratch = new byte[256];
+        int limit = data.limit();
+        int pos = 0;
+        while (pos < limit) {
+            pos = parseInt(data, pos, value);
+            int id = value[0];
+            if (id >= vertices)
+                throw new IllegalArgumentException("Synset id " + id
+                        + " out of range");
+
+            // The second field is the synset, its nouns are separated by
+            // spaces
+            int start = ++pos;
+            int nounStart = start;
+            while (pos < limit) {
+                byte b = data.get(pos);
+                if (b == ',' || b == '\n' || b == '\r')
+                    break;
+                if (pos - start >= scratch.length)
+                    scratch = new byte[2 * scratch.length];
+                if (b == ' ') {
+                    addNoun(decode(data, nounStart, pos, scratch), id);
+                    nounStart = pos + 1;
+                }
+                pos++;
+            }
+            addNoun(decode(data, nounStart, pos, scratch), id);
+            synsets[id] = decode(data, start, pos, scratch);
+
+            // The gloss is not needed
+            pos = skipLine(data, pos);
+        }
+    }
+
+    private void addNoun(String noun, int id) {
+        List<Integer> ids = nounToIds.get(noun);
+        if (ids == null) {
+            ids = new ArrayList<>(1);
+            nounToIds.put(noun, ids);
+        }
+        ids.add(id);
+    }
+
+    private void readHypernyms(ByteBuffer data) {
+        // A synset has one hypernym most of the time
+        int capacity = Math.max(countLines(data), 1);
+        from = new int[capacity];
+        to = new int[capacity];
+
+        int[] value = new int[1];
+        int limit = data.limit();
+        int pos = 0;
+        while (pos < limit) {
+            pos = parseInt(data, pos, value);
+            int id = value[0];
+            while (pos < limit && data.get(pos) == ',') {
+                pos = parseInt(data, pos + 1, value);
+                if (edges == from.length) {
+                    from = Arrays.copyOf(from, 2 * edges);
+                    to = Arrays.copyOf(to, 2 * edges);
+                }
+                from[edges] = id;
+                to[edges] = value[0];
+                edges++;
+            }
+            pos = skipLine(data, pos);
+        }
+    }
+
+    // synsets[id] is the synset (second field of synsets.txt) with that id
+    public String[] synsets() {
+        return synsets;
+    }
+
+    // the ids of the synsets each noun belongs to
+    public Map<String, List<Integer>> nounToIds() {
+        return nounToIds;
+    }
+
+    // number of hypernym edges
+    public int edges() {
+        return edges;
+    }
+
+    // hypernym edges are from()[i] -> to()[i] for i < edges()
+    public int[] from() {
+        return from;
+    }
+
+    public int[] to() {
+        return to;
+    }
+}
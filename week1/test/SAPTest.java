@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks SAP against a brute force search on random digraphs: the two sided
+ * BFS on digraphs with cycles, with the parallel search taking over at the
+ * first level, at a later one or not at all, and the ancestor index on DAGs.
+ *
+ * Usage: java SAPTest
+ */
+public class SAPTest {
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    // a random digraph; edges go to smaller vertices unless cycles are
+    // allowed
+    private static Digraph randomDigraph(Random random, int V, boolean cycles) {
+        Digraph G = new Digraph(V);
+        for (int v = 1; v < V; v++)
+            for (int k = random.nextInt(4); k > 0; k--)
+                G.addEdge(v, random.nextInt(v));
+        if (cycles)
+            for (int k = random.nextInt(V); k > 0; k--)
+                G.addEdge(random.nextInt(V), random.nextInt(V));
+        return G;
+    }
+
+    // distance from the nearest vertex of sources to each vertex, -1 where
+    // there is no path
+    private static int[] distances(Digraph G, List<Integer> sources) {
+        int[] dist = new int[G.V()];
+        Arrays.fill(dist, -1);
+        int[] queue = new int[G.V()];
+        int tail = 0;
+        for (int s : sources) {
+            if (dist[s] < 0) {
+                dist[s] = 0;
+                queue[tail++] = s;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+            for (int w : G.adj(v)) {
+                if (dist[w] < 0) {
+                    dist[w] = dist[v] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return dist;
+    }
+
+    // length of the shortest ancestral path by brute force, and whether
+    // ancestor is on one
+    private static void checkPath(Digraph G, List<Integer> vs,
+            List<Integer> ws, int length, int ancestor, String what) {
+        int[] dv = distances(G, vs), dw = distances(G, ws);
+        int best = -1;
+        for (int a = 0; a < G.V(); a++)
+            if (dv[a] >= 0 && dw[a] >= 0 && (best < 0 || dv[a] + dw[a] < best))
+                best = dv[a] + dw[a];
+        check(length == best, what + ": length " + length + ", expected "
+                + best);
+        if (best < 0)
+            check(ancestor == -1, what + ": ancestor without a path");
+        else
+            check(dv[ancestor] >= 0 && dw[ancestor] >= 0
+                    && dv[ancestor] + dw[ancestor] == best, what
+                    + ": ancestor " + ancestor + " not on a shortest path");
+    }
+
+    private static List<Integer> randomSet(Random random, int V) {
+        List<Integer> set = new ArrayList<>();
+        for (int k = 1 + random.nextInt(random.nextBoolean() ? 3 : 40); k > 0; k--)
+            set.add(random.nextInt(V));
+        return set;
+    }
+
+    private static void checkSAP(Random random, Digraph G, SAP sap,
+            String what) {
+        for (int q = 0; q < 50; q++) {
+            int v = random.nextInt(G.V()), w = random.nextInt(G.V());
+            checkPath(G, Arrays.asList(v), Arrays.asList(w), sap.length(v, w),
+                    sap.ancestor(v, w), what + " (" + v + ", " + w + ")");
+
+            List<Integer> vs = randomSet(random, G.V());
+            List<Integer> ws = randomSet(random, G.V());
+            checkPath(G, vs, ws, sap.length(vs, ws), sap.ancestor(vs, ws),
+                    what + " " + vs + " " + ws);
+        }
+
+        List<List<Integer>> sets = new ArrayList<>();
+        for (int k = random.nextInt(6); k > 0; k--)
+            sets.add(randomSet(random, G.V()));
+        int[][] lengths = sap.lengths(sets);
+        for (int i = 0; i < sets.size(); i++)
+            for (int j = 0; j < sets.size(); j++)
+                check(lengths[i][j] == sap.length(sets.get(i), sets.get(j)),
+                        what + ": lengths[" + i + "][" + j + "]");
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(12);
+        for (int run = 0; run < 60; run++) {
+            int V = 1 + random.nextInt(run < 30 ? 30 : 3000);
+            Digraph G = randomDigraph(random, V, random.nextBoolean());
+            SAP sap = new SAP(G);
+            checkSAP(random, G, sap, "BFS");
+            sap.setParallelThreshold(1);
+            checkSAP(random, G, sap, "parallel from the start");
+            sap.setParallelThreshold(2 + random.nextInt(50));
+            checkSAP(random, G, sap, "parallel at threshold "
+                    + sap.parallelThreshold());
+
+            Digraph dag = randomDigraph(random, V, false);
+            checkSAP(random, dag, new SAP(dag, true), "index");
+        }
+        StdOut.println("SAPTest passed");
+    }
+}
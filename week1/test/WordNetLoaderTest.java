@@ -0,0 +1,48 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that WordNetLoader reads back random synsets and hypernyms files:
+ * the synsets, the synsets of each noun and the hypernym edges, with either
+ * kind of line end.
+ *
+ * Usage: java WordNetLoaderTest
+ */
+public class WordNetLoaderTest {
+
+    private static void checkLoader(WordNets wn, WordNetLoader loader) {
+        WordNets.check(Arrays.asList(loader.synsets()).equals(wn.synsets),
+                "Synsets");
+
+        Map<String, List<Integer>> expected = new HashMap<>();
+        for (String noun : wn.nouns())
+            expected.put(noun, wn.ids(noun));
+        WordNets.check(loader.nounToIds().equals(expected), "Nouns");
+
+        List<Long> edges = new ArrayList<>(), expectedEdges = new ArrayList<>();
+        for (int i = 0; i < loader.edges(); i++)
+            edges.add((long) loader.from()[i] << 32 | loader.to()[i]);
+        for (int id = 0; id < wn.synsets.size(); id++)
+            for (int hypernym : wn.hypernyms.get(id))
+                expectedEdges.add((long) id << 32 | hypernym);
+        Collections.sort(edges);
+        Collections.sort(expectedEdges);
+        WordNets.check(edges.equals(expectedEdges), "Hypernyms");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(6);
+        for (int run = 0; run < 100; run++) {
+            WordNets wn = WordNets.random(random, 1 + random.nextInt(150));
+            String[] files = wn.write(random, random.nextBoolean() ? "\n"
+                    : "\r\n");
+            checkLoader(wn, new WordNetLoader(files[0], files[1]));
+        }
+        StdOut.println("WordNetLoaderTest passed");
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that nearest(noun, k) gives the k nouns with the smallest
+ * distance(noun, other), ties in alphabetical order, on random WordNets and
+ * after addHypernym() has shortened some of the distances.
+ *
+ * Usage: java WordNetNearestTest
+ */
+public class WordNetNearestTest {
+
+    // the k nearest nouns to noun by distance(), by brute force
+    private static List<String> nearest(final WordNet wordnet,
+            final String noun, List<String> nouns, int k) {
+        List<String> others = new ArrayList<>(nouns);
+        others.remove(noun);
+        Collections.sort(others, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int da = wordnet.distance(noun, a), db = wordnet.distance(noun, b);
+                return da != db ? Integer.compare(da, db) : a.compareTo(b);
+            }
+        });
+        return others.subList(0, Math.min(k, others.size()));
+    }
+
+    private static void checkNearest(WordNets wn, WordNet wordnet,
+            Random random) {
+        List<String> nouns = wn.nouns();
+        for (String noun : nouns) {
+            int k = random.nextInt(nouns.size() + 2);
+            List<String> nearest = wordnet.nearest(noun, k);
+            WordNets.check(nearest.equals(nearest(wordnet, noun, nouns, k)),
+                    k + " nearest to " + noun + ": " + nearest);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(15);
+        for (int run = 0; run < 40; run++) {
+            WordNets wn = WordNets.random(random, 1 + random.nextInt(60));
+            WordNet wordnet = wn.build(random);
+            checkNearest(wn, wordnet, random);
+
+            for (int step = 0; step < 5 && wn.synsets.size() > 1; step++) {
+                int n = wn.synsets.size();
+                int from = 1 + random.nextInt(n - 1);
+                int to = random.nextInt(from);
+                wordnet.addHypernym(from, to);
+                wn.hypernyms.get(from).add(to);
+                checkNearest(wn, wordnet, random);
+            }
+        }
+        StdOut.println("WordNetNearestTest passed");
+    }
+}
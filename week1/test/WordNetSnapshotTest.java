@@ -0,0 +1,141 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that a WordNet loaded from a snapshot answers every query like the
+ * WordNet that saved it, also after updates, and that load() rejects files
+ * that are not snapshots, and truncated or corrupt ones, with an
+ * IllegalArgumentException.
+ *
+ * Usage: java WordNetSnapshotTest
+ */
+public class WordNetSnapshotTest {
+
+    private static List<String> nouns(WordNet wordnet) {
+        List<String> nouns = new ArrayList<>();
+        for (String noun : wordnet.nouns())
+            nouns.add(noun);
+        Collections.sort(nouns);
+        return nouns;
+    }
+
+    private static void checkSame(WordNet expected, WordNet wordnet) {
+        List<String> nouns = nouns(expected);
+        WordNets.check(nouns(wordnet).equals(nouns), "Nouns");
+        WordNets.check(!wordnet.isNoun("not_a_noun"), "isNoun");
+        for (String a : nouns) {
+            WordNets.check(wordnet.isNoun(a), "isNoun(" + a + ")");
+            WordNets.check(wordnet.nearest(a, 5).equals(expected.nearest(a, 5)),
+                    "Nearest to " + a);
+            for (String b : nouns) {
+                WordNets.check(wordnet.distance(a, b) == expected.distance(a, b),
+                        "Distance of " + a + " and " + b);
+                WordNets.check(wordnet.sap(a, b).equals(expected.sap(a, b)),
+                        "SAP of " + a + " and " + b);
+            }
+        }
+    }
+
+    private static WordNet roundTrip(WordNet wordnet) throws Exception {
+        File snapshot = File.createTempFile("wordnet", ".bin");
+        snapshot.deleteOnExit();
+        wordnet.save(snapshot.getPath());
+        return WordNet.load(snapshot.getPath());
+    }
+
+    private static void testRoundTrip() throws Exception {
+        Random random = new Random(8);
+        for (int run = 0; run < 30; run++) {
+            WordNets wn = WordNets.random(random, 1 + random.nextInt(100));
+            WordNet wordnet = wn.build(random);
+            checkSame(wordnet, roundTrip(wordnet));
+
+            // Snapshots of an updated WordNet, and updates of a loaded one
+            int id = wordnet.addSynset(WordNets.randomSynset(random),
+                    random.nextInt(wn.synsets.size()));
+            wordnet.addNoun(WordNets.randomNoun(random), random.nextInt(id));
+            if (id > 1)
+                wordnet.addHypernym(id - 1, random.nextInt(id - 1));
+            WordNet loaded = roundTrip(wordnet);
+            checkSame(wordnet, loaded);
+            loaded.addHypernym(id, 0);
+            wordnet.addHypernym(id, 0);
+            checkSame(wordnet, loaded);
+        }
+    }
+
+    private static void testNotASnapshot() throws Exception {
+        File file = File.createTempFile("synsets", ".txt");
+        file.deleteOnExit();
+        PrintWriter out = new PrintWriter(file);
+        out.println("0,entity,that which is perceived to have its own existence");
+        out.close();
+        try {
+            WordNet.load(file.getPath());
+            throw new AssertionError("Loaded " + file);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void checkRejectedOrLoaded(byte[] bytes, int length,
+            boolean mayLoad) throws Exception {
+        File file = File.createTempFile("wordnet", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes, 0, length);
+        }
+        try {
+            WordNet.load(file.getPath());
+            WordNets.check(mayLoad, "Loaded " + length + " of " + bytes.length
+                    + " bytes");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void testCorruptSnapshots() throws Exception {
+        Random random = new Random(13);
+        for (int run = 0; run < 30; run++) {
+            WordNets wn = WordNets.random(random, 1 + random.nextInt(60));
+            File snapshot = File.createTempFile("wordnet", ".bin");
+            snapshot.deleteOnExit();
+            wn.build(random).save(snapshot.getPath());
+            byte[] bytes = new byte[(int) snapshot.length()];
+            try (RandomAccessFile in = new RandomAccessFile(snapshot, "r")) {
+                in.readFully(bytes);
+            }
+
+            // Prefixes of a snapshot: the header cut short, and cuts
+            // anywhere else
+            for (int length = 0; length < Math.min(16, bytes.length); length++)
+                checkRejectedOrLoaded(bytes, length, false);
+            for (int k = 0; k < 20; k++)
+                checkRejectedOrLoaded(bytes, random.nextInt(bytes.length),
+                        false);
+
+            // Random bytes overwritten: strings may still read, but nothing
+            // else may escape from load()
+            for (int k = 0; k < 20; k++) {
+                byte[] corrupt = bytes.clone();
+                for (int i = 1 + random.nextInt(3); i > 0; i--)
+                    corrupt[4 + random.nextInt(bytes.length - 4)] =
+                            (byte) random.nextInt(256);
+                checkRejectedOrLoaded(corrupt, corrupt.length, true);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        testRoundTrip();
+        testNotASnapshot();
+        testCorruptSnapshots();
+        StdOut.println("WordNetSnapshotTest passed");
+    }
+}
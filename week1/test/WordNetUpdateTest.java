@@ -0,0 +1,160 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the incremental updates of WordNet against a WordNet built from
+ * scratch after each update: AncestorIndex.update() gives the same labels as
+ * a new index, and a WordNet with a cache gives the same distances and SAPs
+ * after addSynset(), addNoun() and addHypernym() as one read from files, and
+ * addSynset() rejects synsets with empty nouns.
+ *
+ * Usage: java WordNetUpdateTest
+ */
+public class WordNetUpdateTest {
+
+    private static CompactDigraph graph(WordNets wn) {
+        int edges = 0;
+        for (List<Integer> ids : wn.hypernyms)
+            edges += ids.size();
+        int[] from = new int[edges], to = new int[edges];
+        int e = 0;
+        for (int id = 0; id < wn.synsets.size(); id++) {
+            for (int hypernym : wn.hypernyms.get(id)) {
+                from[e] = id;
+                to[e++] = hypernym;
+            }
+        }
+        return new CompactDigraph(wn.synsets.size(), from, to, edges);
+    }
+
+    private static long[] label(AncestorIndex index, int v) {
+        return index.ancestors(Collections.singletonList(v));
+    }
+
+    private static void testIndexUpdates() {
+        Random random = new Random(9);
+        for (int run = 0; run < 100; run++) {
+            WordNets wn = WordNets.random(random, 2 + random.nextInt(60));
+            CompactDigraph graph = graph(wn);
+            AncestorIndex index = new AncestorIndex(graph);
+            for (int step = 0; step < 10; step++) {
+                // An edge out of each new synset, and a few out of others
+                int n = wn.synsets.size();
+                int vertices = n + random.nextInt(3);
+                int count = vertices - n + 1 + random.nextInt(3);
+                int[] from = new int[count], to = new int[count];
+                for (int i = 0; i < count; i++) {
+                    from[i] = n + i < vertices ? n + i
+                            : 1 + random.nextInt(vertices - 1);
+                    to[i] = random.nextInt(Math.min(from[i], n));
+                }
+                while (wn.synsets.size() < vertices)
+                    wn.addSynset("new");
+                for (int i = 0; i < count; i++)
+                    wn.hypernyms.get(from[i]).add(to[i]);
+
+                graph = graph.addEdges(vertices, from, to, count);
+                index = index.update(graph, from);
+                AncestorIndex fresh = new AncestorIndex(graph(wn));
+                for (int v = 0; v < vertices; v++)
+                    WordNets.check(Arrays.equals(label(index, v),
+                            label(fresh, v)), "Label of " + v);
+            }
+        }
+    }
+
+    private static void checkAgainstRebuild(WordNets wn, WordNet wordnet,
+            Random random) throws Exception {
+        WordNet fresh = wn.build(random);
+        List<String> nouns = wn.nouns();
+        for (String a : nouns) {
+            for (String b : nouns) {
+                WordNets.check(wordnet.distance(a, b) == fresh.distance(a, b),
+                        "Distance of " + a + " and " + b);
+                WordNets.check(wordnet.sap(a, b).equals(fresh.sap(a, b)),
+                        "SAP of " + a + " and " + b);
+            }
+        }
+    }
+
+    private static void testWordNetUpdates() throws Exception {
+        Random random = new Random(10);
+        for (int run = 0; run < 20; run++) {
+            WordNets wn = WordNets.random(random, 1 + random.nextInt(60));
+            WordNet wordnet = wn.build(random);
+            wordnet.setCache(new SAPCache(1 + random.nextInt(2000),
+                    random.nextBoolean() ? SAPCache.Policy.LRU
+                            : SAPCache.Policy.LFU));
+            checkAgainstRebuild(wn, wordnet, random);
+
+            for (int step = 0; step < 8; step++) {
+                int n = wn.synsets.size();
+                switch (random.nextInt(4)) {
+                case 0:
+                    String synset = WordNets.randomSynset(random);
+                    int hypernym = random.nextInt(n);
+                    WordNets.check(wordnet.addSynset(synset, hypernym)
+                            == wn.addSynset(synset, hypernym), "Synset id");
+                    break;
+                case 1:
+                    String noun = WordNets.randomNoun(random);
+                    int id = random.nextInt(n);
+                    wordnet.addNoun(noun, id);
+                    wn.addNoun(noun, id);
+                    break;
+                case 2:
+                    if (n == 1)
+                        continue;
+                    int from = 1 + random.nextInt(n - 1);
+                    int to = random.nextInt(from);
+                    wordnet.addHypernym(from, to);
+                    wn.hypernyms.get(from).add(to);
+                    break;
+                default:
+                    // Every synset reaches the root, so this closes a cycle
+                    try {
+                        wordnet.addHypernym(0, random.nextInt(n));
+                        throw new AssertionError("Closed a cycle");
+                    } catch (IllegalArgumentException e) {
+                        // expected
+                    }
+                }
+                checkAgainstRebuild(wn, wordnet, random);
+            }
+        }
+    }
+
+    private static void testInvalidSynsets() throws Exception {
+        Random random = new Random(14);
+        WordNets wn = WordNets.random(random, 10);
+        WordNet wordnet = wn.build(random);
+        String[] invalid = { "", " ", "x  y", "x y ", " x" };
+        for (String synset : invalid) {
+            try {
+                wordnet.addSynset(synset, 0);
+                throw new AssertionError("Added synset \"" + synset + "\"");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        WordNets.check(!wordnet.isNoun(""), "isNoun(\"\")");
+        WordNets.check(!wordnet.isNoun("x"), "isNoun(x)");
+        checkAgainstRebuild(wn, wordnet, random);
+
+        // A repeated noun is added once, like a noun added twice by addNoun()
+        int id = wordnet.addSynset("twice twice", 0);
+        wn.addSynset("twice twice", 0);
+        WordNets.check(id == wn.synsets.size() - 1, "Synset id");
+        WordNets.check(wordnet.distance("twice", "twice") == 0, "Distance");
+        checkAgainstRebuild(wn, wordnet, random);
+    }
+
+    public static void main(String[] args) throws Exception {
+        testIndexUpdates();
+        testWordNetUpdates();
+        testInvalidSynsets();
+        StdOut.println("WordNetUpdateTest passed");
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A WordNet kept as plain lists, which the tests update along with the WordNet
+ * under test and write to temporary files in the format of synsets.txt and
+ * hypernyms.txt to build a WordNet from scratch. Hypernyms always have a
+ * smaller id than their synset, so synset 0 is the root and no update closes a
+ * cycle.
+ */
+public class WordNets {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // synsets.get(id) is the synset with that id, hypernyms.get(id) its
+    // hypernyms
+    public final List<String> synsets = new ArrayList<>();
+    public final List<List<Integer>> hypernyms = new ArrayList<>();
+
+    // a random WordNet with the given number of synsets; nouns are often in
+    // several synsets, some are not ASCII and some synsets are long
+    public static WordNets random(Random random, int vertices) {
+        WordNets wn = new WordNets();
+        for (int id = 0; id < vertices; id++) {
+            List<Integer> ids = new ArrayList<>();
+            for (int k = id == 0 ? 0 : 1 + random.nextInt(3); k > 0; k--) {
+                int hypernym = random.nextInt(id);
+                if (!ids.contains(hypernym))
+                    ids.add(hypernym);
+            }
+            wn.synsets.add(randomSynset(random));
+            wn.hypernyms.add(ids);
+        }
+        return wn;
+    }
+
+    public static String randomSynset(Random random) {
+        int nouns = random.nextInt(20) == 0 ? 40 : 1 + random.nextInt(3);
+        List<String> synset = new ArrayList<>();
+        while (synset.size() < nouns) {
+            String noun = randomNoun(random);
+            if (!synset.contains(noun))
+                synset.add(noun);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String noun : synset)
+            sb.append(sb.length() == 0 ? "" : " ").append(noun);
+        return sb.toString();
+    }
+
+    public static String randomNoun(Random random) {
+        int k = random.nextInt(80);
+        return k % 7 == 0 ? "cr\u00e8me_" + k : "noun_" + k;
+    }
+
+    // adds a synset as WordNet.addSynset() does and returns its id
+    public int addSynset(String synset, Integer... ids) {
+        synsets.add(synset);
+        hypernyms.add(new ArrayList<>(Arrays.asList(ids)));
+        return synsets.size() - 1;
+    }
+
+    // adds a noun to a synset as WordNet.addNoun() does
+    public void addNoun(String noun, int id) {
+        if (!Arrays.asList(synsets.get(id).split(" ")).contains(noun))
+            synsets.set(id, synsets.get(id) + " " + noun);
+    }
+
+    // the ids of the synsets noun is in, in increasing order
+    public List<Integer> ids(String noun) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < synsets.size(); id++)
+            if (Arrays.asList(synsets.get(id).split(" ")).contains(noun))
+                ids.add(id);
+        return ids;
+    }
+
+    // all nouns, sorted
+    public List<String> nouns() {
+        List<String> nouns = new ArrayList<>();
+        for (String synset : synsets)
+            for (String noun : synset.split(" "))
+                if (!nouns.contains(noun))
+                    nouns.add(noun);
+        Collections.sort(nouns);
+        return nouns;
+    }
+
+    // writes the synsets and hypernyms files, with the hypernym lines
+    // shuffled, and returns their names
+    public String[] write(Random random, String lineEnd) throws IOException {
+        File synsetsFile = File.createTempFile("synsets", ".txt");
+        File hypernymsFile = File.createTempFile("hypernyms", ".txt");
+        synsetsFile.deleteOnExit();
+        hypernymsFile.deleteOnExit();
+
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(synsetsFile), UTF8));
+        for (int id = 0; id < synsets.size(); id++)
+            out.print(id + "," + synsets.get(id) + ",gloss of " + id
+                    + ", with commas" + lineEnd);
+        out.close();
+
+        List<Integer> order = new ArrayList<>();
+        for (int id = 0; id < synsets.size(); id++)
+            order.add(id);
+        Collections.shuffle(order, random);
+        out = new PrintWriter(hypernymsFile, "UTF-8");
+        for (int id : order) {
+            out.print(id);
+            for (int hypernym : hypernyms.get(id))
+                out.print("," + hypernym);
+            out.print(lineEnd);
+        }
+        out.close();
+        return new String[] { synsetsFile.getPath(), hypernymsFile.getPath() };
+    }
+
+    // a WordNet built from scratch from the files of this one
+    public WordNet build(Random random) throws IOException {
+        String[] files = write(random, "\n");
+        return new WordNet(files[0], files[1]);
+    }
+
+    public static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of int buffers shared between threads. acquire() hands out the
+ * shortest free buffer that is long enough, or a new one, and release() takes
+ * it back. A free buffer is only handed out for at least half its length, so
+ * a buffer in use is never more than twice as long as asked for. The pool
+ * never keeps more than capacity ints: when a released buffer does not fit,
+ * the shortest free buffers are dropped first.
+ */
+public class IntBufferPool {
+
+    private final long capacity;
+    private final List<int[]> free = new ArrayList<int[]>();
+    private long pooled;
+
+    public IntBufferPool(long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity < 0");
+        this.capacity = capacity;
+    }
+
+    // a buffer of at least the given length and at most twice that, whose
+    // contents are undefined
+    public synchronized int[] acquire(int length) {
+        int best = -1;
+        for (int i = 0; i < free.size(); i++) {
+            int[] buffer = free.get(i);
+            if (buffer.length >= length && buffer.length <= 2L * length
+                    && (best < 0 || buffer.length < free.get(best).length))
+                best = i;
+        }
+        if (best < 0)
+            return new int[length];
+        int[] buffer = free.remove(best);
+        pooled -= buffer.length;
+        return buffer;
+    }
+
+    // returns a buffer to the pool
+    public synchronized void release(int[] buffer) {
+        if (buffer.length > capacity)
+            return;
+        while (pooled + buffer.length > capacity) {
+            int shortest = 0;
+            for (int i = 1; i < free.size(); i++)
+                if (free.get(i).length < free.get(shortest).length)
+                    shortest = i;
+            pooled -= free.remove(shortest).length;
+        }
+        free.add(buffer);
+        pooled += buffer.length;
+    }
+
+    // number of ints in the free buffers
+    public synchronized long pooled() {
+        return pooled;
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A loop over the indices from..to - 1 that is split over a shared fork-join
+ * pool when it is long enough. A subclass runs one slice of the loop in run()
+ * and, if the slices produce a result, merges the results of two adjacent
+ * slices in merge().
+ */
+public abstract class ParallelLoop {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    // runs the loop for the indices from..to - 1
+    protected abstract long run(int from, int to);
+
+    // the result of two adjacent slices, left before right
+    protected long merge(long left, long right) {
+        return left;
+    }
+
+    // runs the loop for the indices from..to - 1, split into slices of at
+    // least grain indices; loops of at most grain indices run on the calling
+    // thread
+    public long invoke(int from, int to, int grain) {
+        // A few slices per worker are enough to balance the load, and
+        // smaller ones only lose locality
+        int parallelism = POOL.getParallelism();
+        grain = Math.max(Math.max(grain, 1), (to - from) / (4 * parallelism));
+        if (parallelism == 1 || to - from <= grain)
+            return run(from, to);
+        return POOL.invoke(new Slice(this, from, to, grain));
+    }
+
+    private static class Slice extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final ParallelLoop loop;
+        private final int from, to, grain;
+
+        Slice(ParallelLoop loop, int from, int to, int grain) {
+            this.loop = loop;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from < 2 * grain)
+                return loop.run(from, to);
+            int mid = (from + to) >>> 1;
+            Slice left = new Slice(loop, from, mid, grain);
+            left.fork();
+            long right = new Slice(loop, mid, to, grain).compute();
+            return loop.merge(left.join(), right);
+        }
+    }
+}
@@ -1,4 +1,9 @@
 import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
 
 /**
  * Seam-carving is a content-aware image resizing technique where the image is
@@ -6,88 +11,227 @@ import java.awt.Color;
  */
 public class SeamCarver {
 
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Weights that keep seams out of a pixel, or draw them into it, whenever
+     * there is any other choice: either is larger than the cost of a whole
+     * seam of a picture with less than 2^11 rows (or columns)
+     */
+    public static final int PROTECT = 1 << 30, REMOVE = -PROTECT;
+
     private int height, width;
-    private byte[][][] picture;
-    private int[][] energy;
-    private boolean isTransposed;
+
+    /**
+     * Pixel (x, y) is pixels[y * stride + x], packed as 0xRRGGBB, and its
+     * energy is at the same index of energy. Removing a seam shifts the
+     * pixels after it in place, so stride stays the width the rows were
+     * allocated with. Horizontal seams are found and removed on the same
+     * layout as vertical ones, by swapping the steps between rows and
+     * columns.
+     */
+    private final int stride;
+    private final int[] pixels;
+    private final int[] energy;
+    private final SeamCarverSP sp;
+
+    /**
+     * The weight of each pixel added to its cost on a seam, with the same
+     * layout as pixels, or null while all weights are 0
+     */
+    private int[] weights;
+    private SeamEnergy seamEnergy = SeamEnergy.BACKWARD;
+
+    /**
+     * The cost table of sp is for the current picture if tableValid, and for
+     * vertical seams if tableVertical. If pendingSeam is not null, that seam
+     * has been removed since the table was computed, and the table is only
+     * updated for it when it is needed.
+     */
+    private boolean tableValid, tableVertical;
+    private int[] pendingSeam;
+
+    /**
+     * Loops over at least this many pixels are split over a fork-join pool
+     */
+    private int parallelThreshold;
 
     // create a seam carver object based on the given picture
     public SeamCarver(Picture pic) {
-        this.width = pic.width();
-        this.height = pic.height();
-        this.picture = new byte[height][width][3];
-
-        for (int x = 0; x < height; x++)
-            for (int y = 0; y < width; y++) {
-                Color c = pic.get(y, x);
-                this.picture[x][y][0] = (byte) c.getRed();
-                this.picture[x][y][1] = (byte) c.getGreen();
-                this.picture[x][y][2] = (byte) c.getBlue();
-            }
+        this(readPixels(pic), new int[pic.width() * pic.height()],
+                pic.width(), pic.height(), new SeamCarverSP(),
+                DEFAULT_PARALLEL_THRESHOLD);
+    }
 
-        this.isTransposed = false;
+    private static int[] readPixels(Picture pic) {
+        int width = pic.width();
+        int[] pixels = new int[width * pic.height()];
+        for (int y = 0; y < pic.height(); y++)
+            for (int x = 0; x < width; x++)
+                pixels[y * width + x] = pic.get(x, y).getRGB() & 0xffffff;
+        return pixels;
+    }
+
+    /*
+     * Carves a width x height picture in place in the given buffers, which
+     * may be longer than needed so that they can be reused between pictures.
+     * Pixel (x, y) is pixels[y * width + x], packed as 0xRRGGBB. The seam
+     * finder keeps its own buffers, so one can be shared by the pictures
+     * carved one after another on a thread. The parallel threshold is given
+     * here since it already applies to the energy computed by the
+     * constructor.
+     */
+    SeamCarver(int[] pixels, int[] energy, int width, int height,
+            SeamCarverSP sp, int parallelThreshold) {
+        if (width < 1 || height < 1 || pixels.length < width * height
+                || energy.length < width * height)
+            throw new IllegalArgumentException("Buffers too small for "
+                    + width + "x" + height);
+        if (parallelThreshold <= 0)
+            throw new IllegalArgumentException("threshold <= 0");
+        this.width = width;
+        this.height = height;
+        this.stride = width;
+        this.pixels = pixels;
+        this.energy = energy;
+        this.sp = sp;
+        this.parallelThreshold = parallelThreshold;
 
         // Compute the energy for each pixel
-        this.energy = new int[height][width];
-        for (int x = 0; x < height; x++)
-            for (int y = 0; y < width; y++)
-                computeEnergy(x, y);
+        sp.setParallelThreshold(parallelThreshold);
+        new ParallelLoop() {
+            @Override
+            protected long run(int from, int to) {
+                for (int y = from; y < to; y++)
+                    computeEnergyRow(y);
+                return 0;
+            }
+        }.invoke(0, height, parallelThreshold / width);
     }
 
-    private void computeEnergy(int x, int y) {
-        int h = picture.length;
-        int w = picture[0].length;
+    // loops over at least this many pixels (energy computation, seam removal
+    // and the rows of the seam search) are split over a fork-join pool, so
+    // smaller pictures are carved on the calling thread
+    public void setParallelThreshold(int pixels) {
+        if (pixels <= 0)
+            throw new IllegalArgumentException("threshold <= 0");
+        this.parallelThreshold = pixels;
+        sp.setParallelThreshold(pixels);
+    }
+
+    public int parallelThreshold() {
+        return parallelThreshold;
+    }
+
+    // the cost of a pixel on a seam, SeamEnergy.BACKWARD by default
+    public void setSeamEnergy(SeamEnergy seamEnergy) {
+        if (seamEnergy == null)
+            throw new NullPointerException("seamEnergy");
+        this.seamEnergy = seamEnergy;
+        tableValid = false;
+        pendingSeam = null;
+    }
+
+    public SeamEnergy seamEnergy() {
+        return seamEnergy;
+    }
+
+    // add weight to the cost of the pixel at column x and row y on a seam;
+    // PROTECT keeps seams away from it and REMOVE draws them to it. The
+    // weight moves with the pixel as seams are removed.
+    public void setWeight(int x, int y, int weight) {
+        checkPixel(x, y);
+        if (weights == null) {
+            if (weight == 0)
+                return;
+            weights = new int[pixels.length];
+        }
+        weights[y * stride + x] = weight;
+        tableValid = false;
+        pendingSeam = null;
+    }
+
+    // weight of pixel at column x and row y
+    public int weight(int x, int y) {
+        checkPixel(x, y);
+        return weights == null ? 0 : weights[y * stride + x];
+    }
 
-        if (x == 0 || x == h - 1 || y == 0 || y == w - 1)
-            energy[x][y] = 195075;
+    private void checkPixel(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ")");
+    }
+
+    private void computeEnergy(int x, int y) {
+        int i = y * stride + x;
+        if (x == 0 || x == width - 1 || y == 0 || y == height - 1)
+            energy[i] = EnergyKernel.BORDER_ENERGY;
         else
-            energy[x][y] = deltaEnergy(picture[x - 1][y], picture[x + 1][y])
-                    + deltaEnergy(picture[x][y - 1], picture[x][y + 1]);
+            energy[i] = EnergyKernel.pixel(pixels, i, stride);
     }
 
-    private int deltaEnergy(byte[] p1, byte[] p2) {
-        int r = (p1[0] & 0xff) - (p2[0] & 0xff);
-        int g = (p1[1] & 0xff) - (p2[1] & 0xff);
-        int b = (p1[2] & 0xff) - (p2[2] & 0xff);
-        return r * r + g * g + b * b;
+    private void computeEnergyRow(int y) {
+        int start = y * stride;
+        if (y == 0 || y == height - 1 || width <= 2) {
+            Arrays.fill(energy, start, start + width, EnergyKernel.BORDER_ENERGY);
+            return;
+        }
+        energy[start] = EnergyKernel.BORDER_ENERGY;
+        energy[start + width - 1] = EnergyKernel.BORDER_ENERGY;
+        EnergyKernel.row(pixels, energy, start + 1, start + width - 1, stride);
     }
 
     // current picture
     public Picture picture() {
-        if (isTransposed)
-            transpose();
-
         Picture pic = new Picture(width, height);
-        for (int x = 0; x < height; x++)
-            for (int y = 0; y < width; y++) {
-                int r = this.picture[x][y][0] & 0xff;
-                int g = this.picture[x][y][1] & 0xff;
-                int b = this.picture[x][y][2] & 0xff;
-                Color c = new Color(r, g, b);
-                pic.set(y, x, c);
-            }
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                pic.set(x, y, new Color(pixels[y * stride + x]));
         return pic;
     }
 
-    private void transpose() {
-        int p, q;
-        if (isTransposed) {
-            p = height;
-            q = width;
-        } else {
-            p = width;
-            q = height;
-        }
-        byte[][][] transPic = new byte[p][q][3];
-        int[][] transEnergy = new int[p][q];
-        for (int x = 0; x < p; x++)
-            for (int y = 0; y < q; y++) {
-                transPic[x][y] = picture[y][x];
-                transEnergy[x][y] = energy[y][x];
+    // write the current picture to the top left corner of image, one row at
+    // a time straight from the pixel buffer
+    public void writeTo(BufferedImage image) {
+        if (image.getWidth() < width || image.getHeight() < height)
+            throw new IllegalArgumentException("Image smaller than "
+                    + width + "x" + height);
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            // setRGB() takes ARGB, so the pixels are made opaque
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++)
+                    row[x] = pixels[y * stride + x] | 0xff000000;
+                image.setRGB(0, y, width, 1, row, 0, width);
             }
-        picture = transPic;
-        energy = transEnergy;
-        isTransposed = !isTransposed;
+            return;
+        }
+
+        // An int RGB image stores pixels the way they are packed here, so
+        // rows are copied into its buffer as they are
+        WritableRaster raster = image.getRaster();
+        SinglePixelPackedSampleModel model =
+                (SinglePixelPackedSampleModel) raster.getSampleModel();
+        DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        int[] data = buffer.getData();
+        int scanline = model.getScanlineStride();
+        int start = buffer.getOffset() + model.getOffset(
+                -raster.getSampleModelTranslateX(),
+                -raster.getSampleModelTranslateY());
+        for (int y = 0; y < height; y++)
+            System.arraycopy(pixels, y * stride, data, start + y * scanline,
+                    width);
+    }
+
+    /*
+     * The current picture packed as 0xRRGGBB, with pixel (x, y) at
+     * y * width() + x
+     */
+    int[] packedPixels() {
+        int[] packed = new int[width * height];
+        for (int y = 0; y < height; y++)
+            System.arraycopy(pixels, y * stride, packed, y * width, width);
+        return packed;
     }
 
     // width of current picture
@@ -102,90 +246,175 @@ public class SeamCarver {
 
     // energy of pixel at column x and row y
     public double energy(int x, int y) {
-        if (isTransposed)
-            return energy[x][y];
-        else
-            return energy[y][x];
+        checkPixel(x, y);
+        return energy[y * stride + x];
     }
 
     // sequence of indices for horizontal seam
     public int[] findHorizontalSeam() {
-        if (!isTransposed)
-            transpose();
-        return findVerticalSeamInternal();
+        return findSeam(false);
     }
 
     // sequence of indices for vertical seam
     public int[] findVerticalSeam() {
-        if (isTransposed)
-            transpose();
-        return findVerticalSeamInternal();
+        return findSeam(true);
+    }
+
+    private int[] findSeam(boolean vertical) {
+        if (tableValid && tableVertical == vertical) {
+            applyPendingSeam();
+            return sp.seam();
+        }
+        tableValid = true;
+        tableVertical = vertical;
+        pendingSeam = null;
+        if (vertical)
+            return sp.findSeam(pixels, energy, weights, seamEnergy, stride, 1,
+                    height, width);
+        else
+            return sp.findSeam(pixels, energy, weights, seamEnergy, 1, stride,
+                    width, height);
     }
 
-    private int[] findVerticalSeamInternal() {
-        int h = picture.length;
-        int w = picture[0].length;
+    private void applyPendingSeam() {
+        if (pendingSeam != null) {
+            sp.seamRemoved(pendingSeam);
+            pendingSeam = null;
+        }
+    }
 
-        SeamCarverSP sp = new SeamCarverSP(h, w, energy);
-        return sp.getSeam();
+    /*
+     * Keeps the cost table of the seam finder usable after a seam is removed.
+     * Must be called before the picture changes.
+     */
+    private void beforeRemoval(int[] seam, boolean vertical) {
+        if (tableValid && tableVertical == vertical) {
+            // The update of a pending seam reads the energies right after
+            // its removal
+            applyPendingSeam();
+            pendingSeam = seam.clone();
+        } else {
+            tableValid = false;
+            pendingSeam = null;
+        }
     }
 
     // remove horizontal seam from current picture
     public void removeHorizontalSeam(int[] seam) {
         if (height <= 1)
             throw new IllegalArgumentException("height <= 1");
+        checkSeam(seam, width, height);
+        removeHorizontal(seam);
+    }
 
-        if (!isTransposed)
-            transpose();
-        removeVerticalSeamInternal(seam);
+    private void removeHorizontal(final int[] seam) {
+        beforeRemoval(seam, false);
+
+        // Columns move independently, so slices of columns can move in
+        // parallel. Within a slice rows are moved in order, so that memory
+        // is read in order: pixel (x, y) moves up from y + 1 once y has
+        // reached the seam in column x.
+        new ParallelLoop() {
+            @Override
+            protected long run(int from, int to) {
+                int top = height;
+                for (int x = from; x < to; x++)
+                    top = Math.min(top, seam[x]);
+                for (int y = top; y < height - 1; y++) {
+                    int row = y * stride;
+                    for (int x = from; x < to; x++) {
+                        if (seam[x] <= y) {
+                            pixels[row + x] = pixels[row + stride + x];
+                            energy[row + x] = energy[row + stride + x];
+                            if (weights != null)
+                                weights[row + x] = weights[row + stride + x];
+                        }
+                    }
+                }
+                return 0;
+            }
+        }.invoke(0, width, parallelThreshold / height);
         height--;
+
+        // Recompute energy for affected pixels. Below the seam the pixels
+        // moved together, so only the pixels next to the seam and the pixels
+        // between the seam in this column and the seam in the columns next to
+        // it got new neighbors. Since the seam moves by at most one pixel per
+        // column, these are the pixels at seam[x] - 1 and seam[x].
+        for (int x = 0; x < width; x++) {
+            if (seam[x] > 0)
+                computeEnergy(x, seam[x] - 1);
+            if (seam[x] < height)
+                computeEnergy(x, seam[x]);
+        }
     }
 
     // remove vertical seam from current picture
     public void removeVerticalSeam(int[] seam) {
         if (width <= 1)
             throw new IllegalArgumentException("width <= 1");
-
-        if (isTransposed)
-            transpose();
-        removeVerticalSeamInternal(seam);
-        width--;
+        checkSeam(seam, height, width);
+        removeVertical(seam);
     }
 
-    private void removeVerticalSeamInternal(int[] seam) {
-        // Is this a valid seam?
-        if (seam.length != picture.length)
-            throw new IllegalArgumentException("Incorrect seam length");
-        for (int i = 0; i < seam.length; i++)
-            if (i > 0 && Math.abs(seam[i] - seam[i - 1]) > 1)
-                throw new IllegalArgumentException("Seam entry variance");
+    private void removeVertical(final int[] seam) {
+        beforeRemoval(seam, true);
 
-        int newWidth = picture[0].length - 1;
-        for (int i = 0; i < seam.length; i++) {
-            byte[][] oldRow = picture[i];
-            byte[][] newRow = new byte[newWidth][3];
-            System.arraycopy(oldRow, 0, newRow, 0, seam[i]);
-            System.arraycopy(oldRow, seam[i] + 1, newRow, seam[i], newWidth
-                    - seam[i]);
-            picture[i] = newRow;
+        final int newWidth = width - 1;
+        new ParallelLoop() {
+            @Override
+            protected long run(int from, int to) {
+                for (int y = from; y < to; y++) {
+                    int start = y * stride + seam[y];
+                    System.arraycopy(pixels, start + 1, pixels, start,
+                            newWidth - seam[y]);
+                    System.arraycopy(energy, start + 1, energy, start,
+                            newWidth - seam[y]);
+                    if (weights != null)
+                        System.arraycopy(weights, start + 1, weights, start,
+                                newWidth - seam[y]);
+                }
+                return 0;
+            }
+        }.invoke(0, height, parallelThreshold / width);
+        width = newWidth;
+
+        // Recompute energy for affected pixels, as in removeHorizontal():
+        // the pixels at seam[y] - 1 and seam[y] of each row
+        for (int y = 0; y < height; y++) {
+            if (seam[y] > 0)
+                computeEnergy(seam[y] - 1, y);
+            if (seam[y] < width)
+                computeEnergy(seam[y], y);
         }
+    }
+
+    // resize the picture to the given width and height, removing vertical
+    // seams first and then horizontal seams
+    public void resize(int width, int height) {
+        if (width < 1 || width > this.width || height < 1
+                || height > this.height)
+            throw new IllegalArgumentException("Cannot resize to " + width
+                    + "x" + height);
+
+        // After the first seam of each orientation, the seam finder only
+        // updates its cost table around the removed seam
+        while (this.width > width)
+            removeVertical(findVerticalSeam());
+        while (this.height > height)
+            removeHorizontal(findHorizontalSeam());
+    }
 
-        // Recompute energy for affected pixels
+    // Is this a valid seam across a picture with the given number of lines,
+    // each of the given length?
+    private static void checkSeam(int[] seam, int lines, int length) {
+        if (seam.length != lines)
+            throw new IllegalArgumentException("Incorrect seam length");
         for (int i = 0; i < seam.length; i++) {
-            // Pixels seam[i]..newWidth changed in this row
-
-            // Pixels in row above
-            for (int pos = seam[i]; i > 0 && pos < newWidth; pos++)
-                computeEnergy(i - 1, pos);
-            // Pixels in row below
-            for (int pos = seam[i]; i < seam.length - 1 && pos < newWidth; pos++)
-                computeEnergy(i + 1, pos);
-            // Pixel to the left
-            if (seam[i] > 0)
-                computeEnergy(i, seam[i] - 1);
-            // Pixels to the right
-            for (int pos = seam[i]; pos < newWidth; pos++)
-                computeEnergy(i, pos);
+            if (seam[i] < 0 || seam[i] >= length)
+                throw new IllegalArgumentException("Seam entry out of range");
+            if (i > 0 && Math.abs(seam[i] - seam[i - 1]) > 1)
+                throw new IllegalArgumentException("Seam entry variance");
         }
     }
 }
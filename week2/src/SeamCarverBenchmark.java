@@ -0,0 +1,144 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Measures the heap retained by a SeamCarver and how many seams per second it
+ * finds and removes. The picture is read from a file, or generated with the
+ * given size.
+ *
+ * Usage: java SeamCarverBenchmark (picture.png | width height) [seams]
+ */
+public class SeamCarverBenchmark {
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // a picture of random noise on smooth gradients
+    private static Picture generate(int width, int height) {
+        Random random = new Random(42);
+        Picture pic = new Picture(width, height);
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++)
+                pic.set(x, y, new Color((x + random.nextInt(16)) & 0xff,
+                        (y + random.nextInt(16)) & 0xff, random.nextInt(256)));
+        return pic;
+    }
+
+    // removes seams in the given order of orientations, 'v' for vertical and
+    // 'h' for horizontal, repeated as often as needed
+    private static void carve(String name, SeamCarver sc, int seams,
+            String orientations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < seams; i++) {
+            if (orientations.charAt(i % orientations.length()) == 'v')
+                sc.removeVerticalSeam(sc.findVerticalSeam());
+            else
+                sc.removeHorizontalSeam(sc.findHorizontalSeam());
+        }
+        long time = System.nanoTime() - start;
+        StdOut.printf("%-12s %5d seams in %6d ms, %8.1f seams/s (now %dx%d)\n",
+                name, seams, time / 1000000, seams * 1e9 / time, sc.width(),
+                sc.height());
+    }
+
+    /*
+     * Energy of every interior pixel of a width x height buffer, one pixel at
+     * a time or one row at a time. Returns the best of a few runs in
+     * nanoseconds.
+     */
+    private static long energyKernel(int width, int height, boolean rows) {
+        Random random = new Random(42);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = random.nextInt(1 << 24);
+        int[] energy = new int[pixels.length];
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 10; run++) {
+            long start = System.nanoTime();
+            for (int y = 1; y < height - 1; y++) {
+                int row = y * width;
+                if (rows) {
+                    EnergyKernel.row(pixels, energy, row + 1, row + width - 1,
+                            width);
+                } else {
+                    for (int i = row + 1; i < row + width - 1; i++)
+                        energy[i] = EnergyKernel.pixel(pixels, i, width);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    public static void main(String[] args) {
+        Picture pic;
+        int next;
+        if (args[0].matches("\\d+")) {
+            pic = generate(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+            next = 2;
+        } else {
+            pic = new Picture(args[0]);
+            next = 1;
+        }
+        int seams = args.length > next ? Integer.parseInt(args[next]) : 50;
+
+        long before = usedHeap();
+        long start = System.nanoTime();
+        SeamCarver sc = new SeamCarver(pic);
+        long time = System.nanoTime() - start;
+        long retained = usedHeap() - before;
+        StdOut.printf("%dx%d picture: built in %d ms, %d KB retained (%.1f bytes/pixel)\n",
+                pic.width(), pic.height(), time / 1000000, retained / 1024,
+                (double) retained / ((long) pic.width() * pic.height()));
+
+        long pixelTime = energyKernel(pic.width(), pic.height(), false);
+        long rowTime = energyKernel(pic.width(), pic.height(), true);
+        double pixels = (double) pic.width() * pic.height();
+        StdOut.printf("energy       per pixel %7.1f Mpixels/s, per row %7.1f Mpixels/s\n",
+                pixels * 1e3 / pixelTime, pixels * 1e3 / rowTime);
+
+        // The first round warms up the JIT
+        carve("vertical", sc, Math.min(seams, sc.width() / 4), "v");
+        carve("vertical", sc, Math.min(seams, sc.width() / 4), "v");
+        carve("horizontal", sc, Math.min(seams, sc.height() / 4), "h");
+        carve("interleaved", sc, Math.min(seams, Math.min(sc.width(),
+                sc.height()) / 4), "vh");
+        sc.setSeamEnergy(SeamEnergy.FORWARD);
+        carve("forward", sc, Math.min(seams, Math.min(sc.width(),
+                sc.height()) / 4), "vh");
+
+        sc = new SeamCarver(pic);
+        int vertical = Math.min(seams, sc.width() / 4);
+        int horizontal = Math.min(seams, sc.height() / 4);
+        start = System.nanoTime();
+        sc.resize(sc.width() - vertical, sc.height() - horizontal);
+        time = System.nanoTime() - start;
+        StdOut.printf("%-12s %5d seams in %6d ms, %8.1f seams/s (now %dx%d)\n",
+                "resize", vertical + horizontal, time / 1000000,
+                (vertical + horizontal) * 1e9 / time, sc.width(), sc.height());
+
+        sc = new SeamCarver(pic);
+        start = System.nanoTime();
+        SeamIndex index = new SeamIndex(sc, vertical);
+        time = System.nanoTime() - start;
+        StdOut.printf("%-12s %5d seams in %6d ms, %8.1f seams/s\n", "index",
+                vertical, time / 1000000, vertical * 1e9 / time);
+        int[] widths = { pic.width() - vertical, pic.width() - vertical / 2,
+                pic.width() + vertical / 2, pic.width() + vertical };
+        for (int width : widths) {
+            BufferedImage image = new BufferedImage(width, pic.height(),
+                    BufferedImage.TYPE_INT_RGB);
+            start = System.nanoTime();
+            index.writeTo(width, image);
+            time = System.nanoTime() - start;
+            StdOut.printf("%-12s width %5d in %6d ms\n", "index", width,
+                    time / 1000000);
+        }
+    }
+}
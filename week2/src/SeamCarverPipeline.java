@@ -0,0 +1,193 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Resizes a batch of pictures with a pool of worker threads. Each worker
+ * reads a picture, carves it and writes it out, so reading, carving and
+ * writing of different pictures overlap.
+ *
+ * Memory is bounded by a budget of pixels in flight, whatever the number of
+ * pictures. The size of a picture is read from its header, and it is only
+ * decoded once its pixels fit into the budget; a picture larger than the
+ * whole budget waits until it has the budget to itself. A pixel in flight
+ * costs about 25 bytes: the decoded image until it is copied, the pixel and
+ * energy buffers, the cost and edge tables of the seam finder, which is
+ * dropped with the picture, and the output image, whose rows are copied from
+ * the pixel buffer. The pixel and energy buffers come from a pool shared by
+ * the workers and may be up to twice as long as the picture, 8 bytes more,
+ * and the pool keeps free buffers of at most two ints per pixel of the
+ * budget, another 8 bytes. So the pipeline uses at most about
+ * BYTES_PER_PIXEL bytes per pixel of the budget, and a picture larger than
+ * the budget 33 bytes for each pixel over it.
+ *
+ * Usage: java SeamCarverPipeline scale directory picture...
+ */
+public class SeamCarverPipeline {
+
+    public static final int BYTES_PER_PIXEL = 41;
+
+    private final int threads;
+    private final int budget;
+    private final Semaphore pixelsInFlight;
+    private final IntBufferPool buffers;
+
+    // a pipeline with the given number of workers, which carve at most
+    // maxPixelsInFlight pixels at a time
+    public SeamCarverPipeline(int threads, int maxPixelsInFlight) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads < 1");
+        if (maxPixelsInFlight < 1)
+            throw new IllegalArgumentException("maxPixelsInFlight < 1");
+        this.threads = threads;
+        this.budget = maxPixelsInFlight;
+        this.pixelsInFlight = new Semaphore(maxPixelsInFlight, true);
+        // A pixel and an energy buffer for each pixel in flight
+        this.buffers = new IntBufferPool(2L * maxPixelsInFlight);
+    }
+
+    // resize each picture to the given fractions of its width and height, and
+    // write it to directory under the same name; returns the pictures that
+    // could not be resized, with the reason
+    public Map<File, Exception> resize(final List<File> pictures,
+            final double widthScale, final double heightScale,
+            final File directory) throws InterruptedException {
+        if (widthScale <= 0 || widthScale > 1 || heightScale <= 0
+                || heightScale > 1)
+            throw new IllegalArgumentException("Scale not in (0, 1]");
+
+        final Map<File, Exception> failures =
+                Collections.synchronizedMap(new LinkedHashMap<File, Exception>());
+        final AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int i;
+                    while ((i = next.getAndIncrement()) < pictures.size()) {
+                        File picture = pictures.get(i);
+                        try {
+                            resize(picture, widthScale, heightScale,
+                                    new File(directory, picture.getName()));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        } catch (IOException | RuntimeException e) {
+                            failures.put(picture, e);
+                        }
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            throw e;
+        }
+        return failures;
+    }
+
+    private void resize(File in, double widthScale, double heightScale,
+            File out) throws IOException, InterruptedException {
+        ImageInputStream input = ImageIO.createImageInputStream(in);
+        if (input == null)
+            throw new IOException("Cannot read " + in);
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext())
+                throw new IOException("Unknown picture format: " + in);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > Integer.MAX_VALUE)
+                    throw new IOException("Picture too large: " + in);
+
+                int permits = Math.min(width * height, budget);
+                pixelsInFlight.acquire(permits);
+                try {
+                    carve(reader, width, height,
+                            Math.max(1, (int) Math.round(width * widthScale)),
+                            Math.max(1, (int) Math.round(height * heightScale)),
+                            out);
+                } finally {
+                    pixelsInFlight.release(permits);
+                }
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private void carve(ImageReader reader, int width, int height,
+            int newWidth, int newHeight, File out) throws IOException {
+        int[] pixels = buffers.acquire(width * height);
+        int[] energy = buffers.acquire(width * height);
+        try {
+            BufferedImage image = reader.read(0);
+            image.getRGB(0, 0, width, height, pixels, 0, width);
+            image = null;
+            for (int i = 0; i < width * height; i++)
+                pixels[i] &= 0xffffff;
+
+            // The workers already keep the cores busy with one picture each
+            SeamCarver sc = new SeamCarver(pixels, energy, width, height,
+                    new SeamCarverSP(), Integer.MAX_VALUE);
+            sc.resize(newWidth, newHeight);
+
+            BufferedImage output = new BufferedImage(newWidth, newHeight,
+                    BufferedImage.TYPE_INT_RGB);
+            sc.writeTo(output);
+            if (!ImageIO.write(output, reader.getFormatName(), out))
+                throw new IOException("Cannot write " + reader.getFormatName()
+                        + ": " + out);
+        } finally {
+            buffers.release(pixels);
+            buffers.release(energy);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        double scale = Double.parseDouble(args[0]);
+        File directory = new File(args[1]);
+        List<File> pictures = new ArrayList<File>();
+        for (int i = 2; i < args.length; i++)
+            pictures.add(new File(args[i]));
+
+        // Half the heap for the pictures in flight
+        int threads = Runtime.getRuntime().availableProcessors();
+        int budget = (int) Math.min(Integer.MAX_VALUE,
+                Runtime.getRuntime().maxMemory() / 2 / BYTES_PER_PIXEL);
+        long start = System.nanoTime();
+        Map<File, Exception> failures = new SeamCarverPipeline(threads,
+                budget).resize(pictures, scale, scale, directory);
+        long time = System.nanoTime() - start;
+
+        for (Map.Entry<File, Exception> failure : failures.entrySet())
+            StdOut.println(failure.getKey() + ": " + failure.getValue());
+        StdOut.printf("%d of %d pictures resized in %d ms\n",
+                pictures.size() - failures.size(), pictures.size(),
+                time / 1000000);
+    }
+}
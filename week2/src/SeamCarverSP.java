@@ -1,99 +1,325 @@
 /**
- * A shortest path algorithm based on topological sorting. The picture is
- * represented as a DAG, so we can use the topological sort algorithm to find
+ * Finds the vertical seam of least total cost by dynamic programming, one row
+ * at a time. The cost of a seam to a pixel is the least over the three pixels
+ * above it of the cost of a seam to that pixel plus the cost of the step,
+ * which SeamEnergy computes from the packed pixels and their energy, plus the
+ * weight of the pixel if there are weights. Each pixel remembers which of the
+ * three it came from in one byte, and the seam is read back from the cheapest
+ * pixel in the last row.
+ *
+ * The cost table is kept after a search. Once a seam has been removed, only
+ * the pixels whose cost can have changed are relaxed again: the pixels next to
+ * the seam, whose energy and neighbors changed, and below them the pixels with
+ * a parent whose cost changed. The changes usually die out a few rows below
  * the seam.
+ *
+ * Rows with at least parallelThreshold pixels are relaxed in column slices on
+ * a fork-join pool. Rows depend on the row above, so they are always relaxed
+ * in order.
+ *
+ * Ties are broken towards the leftmost pixel. The buffers are kept between
+ * calls, so finding seams in a loop allocates nothing per pixel.
  */
 public class SeamCarverSP {
 
-    private int height;
-    private int width;
-    private int[][] energy;
+    private static final long NONE_CHANGED = range(Integer.MAX_VALUE, -1);
 
-    private int[] edgeTo, distTo;
-    private Stack<Integer> topologyStack;
-    private boolean[] marked;
+    /**
+     * distTo[row * stride + column] is the least cost of a seam from the first
+     * row to the pixel, and edgeTo the column offset (-1, 0 or 1) of the
+     * pixel above it on that seam. Removing a seam shifts the rest of each
+     * row left, so stride stays the width of the last full search.
+     */
+    private long[] distTo = new long[0];
+    private byte[] edgeTo = new byte[0];
+    private int stride;
 
-    private int[] seam;
+    /**
+     * The grid of the last search: its pixel at (row, column) is
+     * pixels[row * rowStep + column * columnStep], and its energy and weight
+     * are at the same index of energy and weights. weights is null if all
+     * weights are 0.
+     */
+    private int[] pixels, energy, weights;
+    private SeamEnergy seamEnergy;
+    private int rowStep, columnStep;
+    private int height, width;
 
-    public SeamCarverSP(int height, int width, int[][] energy) {
+    private int parallelThreshold = Integer.MAX_VALUE;
+
+    // rows and loops over at least this many pixels are split over a
+    // fork-join pool
+    public void setParallelThreshold(int threshold) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("threshold <= 0");
+        this.parallelThreshold = threshold;
+    }
+
+    // the vertical seam of least total cost through a height x width grid
+    // whose pixel at (row, column) is pixels[row * rowStep + column *
+    // columnStep], with its energy and weight (if weights is not null) at the
+    // same index of energy and weights. A horizontal seam of a picture is a
+    // vertical seam of the grid with the steps swapped.
+    public int[] findSeam(int[] pixels, int[] energy, int[] weights,
+            SeamEnergy seamEnergy, int rowStep, int columnStep, int height,
+            int width) {
+        this.pixels = pixels;
+        this.energy = energy;
+        this.weights = weights;
+        this.seamEnergy = seamEnergy;
+        this.rowStep = rowStep;
+        this.columnStep = columnStep;
         this.height = height;
         this.width = width;
-        this.energy = energy;
+        this.stride = width;
+        if (distTo.length < height * width) {
+            distTo = new long[height * width];
+            edgeTo = new byte[height * width];
+        }
 
-        findSeam();
+        for (int column = 0; column < width; column++)
+            distTo[column] = firstRowCost(column);
+        for (int row = 1; row < height; row++)
+            relax(row, 0, width - 1);
+        return seam();
     }
 
-    private void findSeam() {
-        /*
-         * Topological shortest distance algorithm.
-         * 
-         * There is one extra vertex acting as a sink in our graph. Each vertex
-         * is represented by an integer.
-         */
-        int V = height * width + 1;
-        edgeTo = new int[V];
-        distTo = new int[V];
-
-        for (int i = 0; i < width; i++)
-            distTo[0] = 0;
-        for (int i = width; i < V; i++)
-            distTo[i] = Integer.MAX_VALUE;
-
-        for (int v : topologicalSort(V))
-            for (int adj : adjacentVertices(v)) {
-                int weight = 0;
-                if (adj < V - 1)
-                    weight = energy[adj / width][adj % width];
-                relax(v, adj, weight);
+    // updates the cost table of the last search after a seam has been
+    // removed from its grid (with its pixels and weights) and the energies
+    // next to the seam updated
+    public void seamRemoved(final int[] removed) {
+        width--;
+        new ParallelLoop() {
+            @Override
+            protected long run(int from, int to) {
+                for (int row = from; row < to; row++) {
+                    int start = row * stride + removed[row];
+                    int length = width - removed[row];
+                    System.arraycopy(distTo, start + 1, distTo, start, length);
+                    System.arraycopy(edgeTo, start + 1, edgeTo, start, length);
+                }
+                return 0;
             }
+        }.invoke(0, height, parallelThreshold / Math.max(width, 1));
 
-        seam = new int[height];
-        for (int i = height - 1, v = V - 1; i >= 0; i--, v = edgeTo[v])
-            seam[i] = edgeTo[v] % width;
+        // The pixels next to the seam have new energies and neighbors. Below
+        // the first row, the pixels between the seam in this row and the seam
+        // in the row above now have other parents and other pixels above
+        // them, and the children of pixels with a new cost need a new cost
+        // too.
+        long changed = NONE_CHANGED;
+        for (int row = 0; row < height; row++) {
+            int s = removed[row];
+            int from = s - 1, to = s;
+            if (row > 0) {
+                from = Math.min(from, Math.min(s, removed[row - 1]) - 1);
+                to = Math.max(to, Math.max(s, removed[row - 1]));
+                if (rangeLo(changed) <= rangeHi(changed)) {
+                    from = Math.min(from, rangeLo(changed) - 1);
+                    to = Math.max(to, rangeHi(changed) + 1);
+                }
+            }
+            from = Math.max(from, 0);
+            to = Math.min(to, width - 1);
+            if (row == 0) {
+                int lo = Integer.MAX_VALUE, hi = -1;
+                for (int column = from; column <= to; column++) {
+                    if (setDist(column, firstRowCost(column))) {
+                        lo = Math.min(lo, column);
+                        hi = column;
+                    }
+                }
+                changed = range(lo, hi);
+            } else {
+                changed = relax(row, from, to);
+            }
+        }
     }
 
-    private void relax(int from, int to, int weight) {
-        if (distTo[to] > distTo[from] + weight) {
-            distTo[to] = distTo[from] + weight;
-            edgeTo[to] = from;
-        }
+    /*
+     * Relaxes columns from..to of the row from the row above, and returns the
+     * range of the columns that got a new cost.
+     */
+    private long relax(final int row, int from, int to) {
+        if (to - from + 1 < parallelThreshold)
+            return relaxSlice(row, from, to + 1);
+        return new ParallelLoop() {
+            @Override
+            protected long run(int from, int to) {
+                return relaxSlice(row, from, to);
+            }
+
+            @Override
+            protected long merge(long left, long right) {
+                return SeamCarverSP.merge(left, right);
+            }
+        }.invoke(from, to + 1, parallelThreshold / 2);
+    }
+
+    private long firstRowCost(int column) {
+        int i = column * columnStep;
+        long cost = seamEnergy.cost(pixels, energy, i, rowStep, columnStep, 0,
+                column, width, 0);
+        return weights == null ? cost : cost + weights[i];
     }
 
-    private Iterable<Integer> topologicalSort(int V) {
-        marked = new boolean[V];
-        topologyStack = new Stack<>();
-        for (int i = 0; i < V; i++)
-            if (!marked[i])
-                dfs(i);
-        return topologyStack;
+    private long relaxSlice(int row, int from, int to) {
+        if (seamEnergy == SeamEnergy.BACKWARD)
+            return relaxBackward(row, from, to);
+        if (seamEnergy == SeamEnergy.FORWARD)
+            return relaxForward(row, from, to);
+
+        int above = (row - 1) * stride;
+        int offset = row * rowStep;
+        int lo = Integer.MAX_VALUE, hi = -1;
+        for (int column = from; column < to; column++) {
+            int i = offset + column * columnStep;
+            byte edge = 0;
+            long best = distTo[above + column] + seamEnergy.cost(pixels,
+                    energy, i, rowStep, columnStep, row, column, width, 0);
+            if (column > 0) {
+                long dist = distTo[above + column - 1] + seamEnergy.cost(
+                        pixels, energy, i, rowStep, columnStep, row, column,
+                        width, -1);
+                if (dist <= best) {
+                    best = dist;
+                    edge = -1;
+                }
+            }
+            if (column < width - 1) {
+                long dist = distTo[above + column + 1] + seamEnergy.cost(
+                        pixels, energy, i, rowStep, columnStep, row, column,
+                        width, 1);
+                if (dist < best) {
+                    best = dist;
+                    edge = 1;
+                }
+            }
+            edgeTo[above + stride + column] = edge;
+            if (weights != null)
+                best += weights[i];
+            if (setDist(above + stride + column, best)) {
+                lo = Math.min(lo, column);
+                hi = column;
+            }
+        }
+        return range(lo, hi);
     }
 
-    private void dfs(int i) {
-        marked[i] = true;
-        for (int j : adjacentVertices(i))
-            if (!marked[j])
-                dfs(j);
-        topologyStack.push(i);
+    /*
+     * relaxSlice() for BACKWARD, whose cost does not depend on the step, so
+     * only the cheapest pixel above is needed
+     */
+    private long relaxBackward(int row, int from, int to) {
+        int above = (row - 1) * stride;
+        int offset = row * rowStep;
+        int lo = Integer.MAX_VALUE, hi = -1;
+        for (int column = from; column < to; column++) {
+            byte edge = 0;
+            long best = distTo[above + column];
+            if (column > 0 && distTo[above + column - 1] <= best) {
+                best = distTo[above + column - 1];
+                edge = -1;
+            }
+            if (column < width - 1 && distTo[above + column + 1] < best) {
+                best = distTo[above + column + 1];
+                edge = 1;
+            }
+            edgeTo[above + stride + column] = edge;
+            int i = offset + column * columnStep;
+            best += weights == null ? energy[i] : (long) energy[i] + weights[i];
+            if (setDist(above + stride + column, best)) {
+                lo = Math.min(lo, column);
+                hi = column;
+            }
+        }
+        return range(lo, hi);
     }
 
-    private Iterable<Integer> adjacentVertices(int v) {
-        Bag<Integer> bag = new Bag<>();
-        int row = v / width;
-        int column = v % width;
-        if (row == height - 1)
-            bag.add(height * width);
-        else if (row < height) {
-            int idx = (row + 1) * width + column - 1;
-            if (column > 0)
-                bag.add(idx);
-            bag.add(idx + 1);
-            if (column < width - 1)
-                bag.add(idx + 2);
+    /*
+     * relaxSlice() for FORWARD, with the three costs of a pixel computed
+     * together: the difference of the neighbors in the row is part of each
+     */
+    private long relaxForward(int row, int from, int to) {
+        int above = (row - 1) * stride;
+        int offset = row * rowStep;
+        int lo = Integer.MAX_VALUE, hi = -1;
+        for (int column = from; column < to; column++) {
+            int i = offset + column * columnStep;
+            int left = column > 0 ? pixels[i - columnStep] : pixels[i];
+            int right = column < width - 1 ? pixels[i + columnStep] : pixels[i];
+            int up = pixels[i - rowStep];
+            long cost = EnergyKernel.delta(left, right);
+
+            byte edge = 0;
+            long best = distTo[above + column];
+            if (column > 0) {
+                long dist = distTo[above + column - 1]
+                        + EnergyKernel.delta(up, left);
+                if (dist <= best) {
+                    best = dist;
+                    edge = -1;
+                }
+            }
+            if (column < width - 1) {
+                long dist = distTo[above + column + 1]
+                        + EnergyKernel.delta(up, right);
+                if (dist < best) {
+                    best = dist;
+                    edge = 1;
+                }
+            }
+            edgeTo[above + stride + column] = edge;
+            best += weights == null ? cost : cost + weights[i];
+            if (setDist(above + stride + column, best)) {
+                lo = Math.min(lo, column);
+                hi = column;
+            }
         }
-        return bag;
+        return range(lo, hi);
+    }
+
+    private boolean setDist(int i, long dist) {
+        if (distTo[i] == dist)
+            return false;
+        distTo[i] = dist;
+        return true;
     }
 
-    public int[] getSeam() {
+    /*
+     * A range of columns lo..hi packed into a long; lo > hi if it is empty.
+     */
+    private static long range(int lo, int hi) {
+        return ((long) lo << 32) | (hi & 0xffffffffL);
+    }
+
+    private static int rangeLo(long range) {
+        return (int) (range >> 32);
+    }
+
+    private static int rangeHi(long range) {
+        return (int) range;
+    }
+
+    private static long merge(long a, long b) {
+        return range(Math.min(rangeLo(a), rangeLo(b)),
+                Math.max(rangeHi(a), rangeHi(b)));
+    }
+
+    // the seam of least total energy through the grid of the last search
+    public int[] seam() {
+        int last = (height - 1) * stride;
+        int column = 0;
+        for (int i = 1; i < width; i++)
+            if (distTo[last + i] < distTo[last + column])
+                column = i;
+
+        int[] seam = new int[height];
+        for (int row = height - 1; row > 0; row--) {
+            seam[row] = column;
+            column += edgeTo[row * stride + column];
+        }
+        seam[0] = column;
         return seam;
     }
 }
@@ -0,0 +1,45 @@
+/**
+ * The cost of a pixel on a seam, which the seam finder adds up along the
+ * seam. The cost may depend on which of the three pixels above the seam comes
+ * from, so that it can charge for the new neighbors the removal creates.
+ *
+ * BACKWARD charges the dual-gradient energy of the pixel itself. FORWARD
+ * charges the energy the removal adds to the picture: the difference between
+ * the pixels that become neighbors in the row, and for a diagonal step also
+ * between the pixel above and the one that moves under it. Pixel differences
+ * are squared RGB distances, the same unit as the dual-gradient energy.
+ */
+public abstract class SeamEnergy {
+
+    public static final SeamEnergy BACKWARD = new SeamEnergy() {
+        @Override
+        protected long cost(int[] pixels, int[] energy, int i, int rowStep,
+                int columnStep, int row, int column, int width, int edge) {
+            return energy[i];
+        }
+    };
+
+    public static final SeamEnergy FORWARD = new SeamEnergy() {
+        @Override
+        protected long cost(int[] pixels, int[] energy, int i, int rowStep,
+                int columnStep, int row, int column, int width, int edge) {
+            // A pixel on the border is its own missing neighbor
+            int left = column > 0 ? pixels[i - columnStep] : pixels[i];
+            int right = column < width - 1 ? pixels[i + columnStep] : pixels[i];
+            long cost = EnergyKernel.delta(left, right);
+            if (edge == 0)
+                return cost;
+            return cost + EnergyKernel.delta(pixels[i - rowStep],
+                    edge < 0 ? left : right);
+        }
+    };
+
+    // the cost of the pixel at index i, in the given row and column of a
+    // grid of the given width, on a seam that comes from the pixel above it
+    // on the left (edge -1), straight above (0) or on the right (1). The
+    // pixel's neighbors in the row are at i - columnStep and i + columnStep,
+    // and the pixel above it at i - rowStep. In the first row edge is 0.
+    protected abstract long cost(int[] pixels, int[] energy, int i,
+            int rowStep, int columnStep, int row, int column, int width,
+            int edge);
+}
@@ -0,0 +1,147 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * The order in which the first vertical seams of a picture remove its pixels,
+ * found in one run of a SeamCarver. With this map, the picture can be made
+ * narrower by up to seams() columns by dropping the pixels of the first seams,
+ * or wider by as much by doubling them, in one pass over the picture and
+ * without searching for seams again.
+ *
+ * A doubled pixel is followed by the average of itself and the pixel to its
+ * right, so the widened picture blends across each inserted seam.
+ */
+public class SeamIndex {
+
+    private final int width, height, seams;
+
+    /**
+     * Pixel (x, y) of the picture before carving is pixels[y * width + x],
+     * packed as 0xRRGGBB, and order at the same index is the number of the
+     * seam that removed it, or seams if it was not removed
+     */
+    private final int[] pixels;
+    private final int[] order;
+
+    // find the first seams vertical seams of the picture of sc, with its
+    // seam energy and weights, removing them from sc
+    public SeamIndex(SeamCarver sc, int seams) {
+        if (seams < 0 || seams >= sc.width())
+            throw new IllegalArgumentException("Cannot find " + seams
+                    + " seams in a picture " + sc.width() + " wide");
+        this.width = sc.width();
+        this.height = sc.height();
+        this.seams = seams;
+        this.pixels = sc.packedPixels();
+        this.order = new int[width * height];
+        Arrays.fill(order, seams);
+
+        // columns[y * width + x] is the column before carving of the pixel
+        // now at (x, y); it shifts with the pixels as seams are removed
+        int[] columns = new int[width * height];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                columns[y * width + x] = x;
+        for (int k = 0; k < seams; k++) {
+            int[] seam = sc.findVerticalSeam();
+            int remaining = width - k - 1;
+            for (int y = 0; y < height; y++) {
+                int start = y * width + seam[y];
+                order[y * width + columns[start]] = k;
+                System.arraycopy(columns, start + 1, columns, start,
+                        remaining - seam[y]);
+            }
+            sc.removeVerticalSeam(seam);
+        }
+    }
+
+    // width of the picture before carving
+    public int width() {
+        return width;
+    }
+
+    // height of the picture
+    public int height() {
+        return height;
+    }
+
+    // number of seams found
+    public int seams() {
+        return seams;
+    }
+
+    // number of the seam that removes the pixel at column x and row y of the
+    // picture before carving, or seams() if none does
+    public int order(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ")");
+        return order[y * width + x];
+    }
+
+    // the picture resized to the given width, which must be within seams()
+    // of width()
+    public Picture picture(int width) {
+        int[] row = new int[checkWidth(width)];
+        Picture pic = new Picture(width, height);
+        for (int y = 0; y < height; y++) {
+            resizeRow(y, row);
+            for (int x = 0; x < width; x++)
+                pic.set(x, y, new Color(row[x]));
+        }
+        return pic;
+    }
+
+    // write the picture resized to the given width, which must be within
+    // seams() of width(), to the top left corner of image
+    public void writeTo(int width, BufferedImage image) {
+        int[] row = new int[checkWidth(width)];
+        if (image.getWidth() < width || image.getHeight() < height)
+            throw new IllegalArgumentException("Image smaller than "
+                    + width + "x" + height);
+        for (int y = 0; y < height; y++) {
+            resizeRow(y, row);
+            // setRGB() takes ARGB, so the pixels are made opaque
+            for (int x = 0; x < width; x++)
+                row[x] |= 0xff000000;
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+
+    private int checkWidth(int width) {
+        if (width < 1 || Math.abs(width - this.width) > seams)
+            throw new IllegalArgumentException("Cannot resize to width "
+                    + width + " with " + seams + " seams");
+        return width;
+    }
+
+    /*
+     * Fills row with row y of the picture resized to row.length columns
+     */
+    private void resizeRow(int y, int[] row) {
+        int start = y * width;
+        int x = 0;
+        if (row.length <= width) {
+            // Drop the pixels of the first width - row.length seams
+            int dropped = width - row.length;
+            for (int i = start; i < start + width; i++)
+                if (order[i] >= dropped)
+                    row[x++] = pixels[i];
+        } else {
+            // Double the pixels of the first row.length - width seams
+            int doubled = row.length - width;
+            for (int i = start; i < start + width; i++) {
+                row[x++] = pixels[i];
+                if (order[i] < doubled) {
+                    int right = i + 1 < start + width ? pixels[i + 1] : pixels[i];
+                    row[x++] = average(pixels[i], right);
+                }
+            }
+        }
+    }
+
+    // the average of two pixels, channel by channel
+    private static int average(int p1, int p2) {
+        return (p1 & p2) + (((p1 ^ p2) & 0xfefefe) >> 1);
+    }
+}
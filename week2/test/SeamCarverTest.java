@@ -0,0 +1,167 @@
+import java.awt.Color;
+import java.util.Random;
+
+/**
+ * Checks that a SeamCarver that has had seams removed, and so only updated
+ * its energies and seam tables around them, agrees with one built from
+ * scratch from its current picture: the same energies, the same seams, and
+ * seams as cheap as a plain dynamic program over the energies finds.
+ *
+ * Usage: java SeamCarverTest
+ */
+public class SeamCarverTest {
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    private static Picture randomPicture(Random random, int width,
+            int height) {
+        Picture pic = new Picture(width, height);
+        // Few colors, so that there are ties between seams
+        int colors = 1 + random.nextInt(6);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                pic.set(x, y, new Color(random.nextInt(colors) * 50,
+                        random.nextInt(colors) * 40, random.nextInt(256)));
+        return pic;
+    }
+
+    // a random vertical seam of a width x height picture
+    private static int[] randomSeam(Random random, int width, int height) {
+        int[] seam = new int[height];
+        seam[0] = random.nextInt(width);
+        for (int y = 1; y < height; y++)
+            seam[y] = Math.min(width - 1,
+                    Math.max(0, seam[y - 1] + random.nextInt(3) - 1));
+        return seam;
+    }
+
+    // dual-gradient energy of pixel (x, y) of pic, by the definition
+    private static double energy(Picture pic, int x, int y) {
+        if (x == 0 || y == 0 || x == pic.width() - 1 || y == pic.height() - 1)
+            return EnergyKernel.BORDER_ENERGY;
+        return delta(pic.get(x - 1, y), pic.get(x + 1, y))
+                + delta(pic.get(x, y - 1), pic.get(x, y + 1));
+    }
+
+    private static int delta(Color c1, Color c2) {
+        int r = c1.getRed() - c2.getRed();
+        int g = c1.getGreen() - c2.getGreen();
+        int b = c1.getBlue() - c2.getBlue();
+        return r * r + g * g + b * b;
+    }
+
+    // least total energy of a vertical seam of sc
+    private static double cheapestVerticalSeam(SeamCarver sc) {
+        double[] dist = new double[sc.width()];
+        for (int x = 0; x < sc.width(); x++)
+            dist[x] = sc.energy(x, 0);
+        for (int y = 1; y < sc.height(); y++) {
+            double[] next = new double[sc.width()];
+            for (int x = 0; x < sc.width(); x++) {
+                double best = dist[x];
+                if (x > 0)
+                    best = Math.min(best, dist[x - 1]);
+                if (x < sc.width() - 1)
+                    best = Math.min(best, dist[x + 1]);
+                next[x] = best + sc.energy(x, y);
+            }
+            dist = next;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (double d : dist)
+            best = Math.min(best, d);
+        return best;
+    }
+
+    private static double verticalSeamEnergy(SeamCarver sc, int[] seam) {
+        double total = 0;
+        for (int y = 0; y < seam.length; y++)
+            total += sc.energy(seam[y], y);
+        return total;
+    }
+
+    private static void checkSameSeams(int[] seam, int[] expected,
+            String what) {
+        check(seam.length == expected.length, what + " length");
+        for (int i = 0; i < seam.length; i++)
+            check(seam[i] == expected[i], what + " at " + i);
+    }
+
+    private static void checkAgainstScratch(SeamCarver sc, boolean weighted) {
+        Picture pic = sc.picture();
+        SeamCarver fresh = new SeamCarver(pic);
+        fresh.setSeamEnergy(sc.seamEnergy());
+        for (int y = 0; y < sc.height(); y++) {
+            for (int x = 0; x < sc.width(); x++) {
+                check(sc.energy(x, y) == energy(pic, x, y), "Energy at (" + x
+                        + ", " + y + ")");
+                fresh.setWeight(x, y, sc.weight(x, y));
+            }
+        }
+
+        // Pixels just outside the picture are still in the buffers
+        int[][] outside = { { -1, 0 }, { sc.width(), 0 }, { 0, -1 },
+                { 0, sc.height() } };
+        for (int[] p : outside) {
+            try {
+                sc.energy(p[0], p[1]);
+                throw new AssertionError("Energy at (" + p[0] + ", " + p[1]
+                        + ")");
+            } catch (IndexOutOfBoundsException e) {
+                // expected
+            }
+        }
+
+        int[] vertical = sc.findVerticalSeam();
+        checkSameSeams(vertical, fresh.findVerticalSeam(), "Vertical seam");
+        checkSameSeams(sc.findHorizontalSeam(), fresh.findHorizontalSeam(),
+                "Horizontal seam");
+        if (!weighted && sc.seamEnergy() == SeamEnergy.BACKWARD)
+            check(verticalSeamEnergy(sc, vertical) == cheapestVerticalSeam(sc),
+                    "Vertical seam not the cheapest");
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(11);
+        for (int run = 0; run < 150; run++) {
+            int width = 1 + random.nextInt(24), height = 1 + random.nextInt(24);
+            SeamCarver sc = new SeamCarver(randomPicture(random, width,
+                    height));
+            // Small thresholds to split the loops over the pool as well
+            sc.setParallelThreshold(1 + random.nextInt(200));
+            if (random.nextInt(3) == 0)
+                sc.setSeamEnergy(SeamEnergy.FORWARD);
+            boolean weighted = random.nextInt(4) == 0;
+            if (weighted)
+                for (int k = random.nextInt(6); k >= 0; k--)
+                    sc.setWeight(random.nextInt(width), random.nextInt(height),
+                            random.nextBoolean() ? SeamCarver.PROTECT
+                                    : SeamCarver.REMOVE);
+            checkAgainstScratch(sc, weighted);
+
+            for (int step = 0; step < 12; step++) {
+                boolean vertical = random.nextBoolean();
+                if (vertical ? sc.width() == 1 : sc.height() == 1)
+                    continue;
+                // Half the time a seam that was found, so that the table
+                // kept from the search is updated, and otherwise any seam
+                int[] seam;
+                if (vertical)
+                    seam = random.nextBoolean() ? sc.findVerticalSeam()
+                            : randomSeam(random, sc.width(), sc.height());
+                else
+                    seam = random.nextBoolean() ? sc.findHorizontalSeam()
+                            : randomSeam(random, sc.height(), sc.width());
+                if (vertical)
+                    sc.removeVerticalSeam(seam);
+                else
+                    sc.removeHorizontalSeam(seam);
+                checkAgainstScratch(sc, weighted);
+            }
+        }
+        StdOut.println("SeamCarverTest passed");
+    }
+}
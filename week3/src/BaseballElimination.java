@@ -1,7 +1,23 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 public class BaseballElimination {
 
     private int N;
     private ST<String, Integer> teams;
+
+    /**
+     * names[i] is the name of team i, and byName lists the team indices in
+     * the order of their names
+     */
+    private String[] names;
+    private int[] byName;
     private int[] wins;
     private int[] losses;
     private int[] remaining;
@@ -9,6 +25,35 @@ public class BaseballElimination {
 
     private ST<Integer, SET<String>> certificates = new ST<>();
 
+    /**
+     * Teams known to be eliminated without a certificate for the current
+     * standings: those eliminatedTeams() decided because a team that can win
+     * as many games is eliminated, and those eliminated before a game was
+     * recorded. Their certificates are found when asked for, as for a league
+     * read with the current standings.
+     */
+    private boolean[] uncertified;
+
+    /**
+     * Flow networks of the league, built when first needed. Single queries
+     * use the first one, and each worker of eliminatedTeams() its own.
+     */
+    private EliminationFlow[] flows = new EliminationFlow[0];
+
+    /**
+     * The last flow found for each team that was not eliminated, as saved by
+     * EliminationFlow.saveFlow(), or null. After a game is played, the flow
+     * for the team starts from it.
+     */
+    private int[][] savedFlows;
+
+    // shared by all instances; its workers are daemon threads, so it needs
+    // no shutdown
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    // number of teams eliminatedTeams() decides at a time, in parallel
+    private int threads = Runtime.getRuntime().availableProcessors();
+
     public BaseballElimination(String filename) {
         readData(filename);
     }
@@ -32,6 +77,16 @@ public class BaseballElimination {
                 against[i][j] = in.readInt();
         }
         in.close();
+
+        savedFlows = new int[N][];
+        uncertified = new boolean[N];
+        names = new String[N];
+        byName = new int[N];
+        int k = 0;
+        for (String team : teams.keys()) {
+            names[teams.get(team)] = team;
+            byName[k++] = teams.get(team);
+        }
     }
 
     // number of teams
@@ -74,6 +129,8 @@ public class BaseballElimination {
     // is given team eliminated?
     public boolean isEliminated(String team) {
         int idx = getTeamIndex(team);
+        if (uncertified[idx])
+            return true;
         computeElimination(idx);
         return !certificates.get(idx).isEmpty();
     }
@@ -89,79 +146,221 @@ public class BaseballElimination {
             return certs;
     }
 
+    // record that winner beat loser in one of their remaining games
+    public void recordGame(String winner, String loser) {
+        int w = getTeamIndex(winner), l = getTeamIndex(loser);
+        if (against[w][l] == 0)
+            throw new IllegalArgumentException("No games left between "
+                    + winner + " and " + loser);
+        wins[w]++;
+        losses[l]++;
+        remaining[w]--;
+        remaining[l]--;
+        against[w][l]--;
+        against[l][w]--;
+
+        // No team can win more games than before, and the teams of any R
+        // have at least as many wins and games among them as before (one more
+        // if only the winner is in R), so eliminated teams stay eliminated,
+        // though the minimum cut may now give another R. The winner can reach
+        // as many wins as before, and the R without it are as strong as
+        // before, so it keeps its status. Only the other teams have to be
+        // decided again.
+        for (int i = 0; i < N; i++) {
+            SET<String> certs = certificates.get(i);
+            if (certs == null)
+                continue;
+            if (!certs.isEmpty()) {
+                uncertified[i] = true;
+                certificates.put(i, null);
+            } else if (i != w) {
+                certificates.put(i, null);
+            }
+        }
+    }
+
     private void computeElimination(int team) {
-        if (certificates.contains(team))
-            return;
+        if (!certificates.contains(team)) {
+            certificates.put(team, eliminate(team, flow(0)));
+            uncertified[team] = false;
+        }
+    }
+
+    private EliminationFlow flow(int k) {
+        if (flows.length <= k)
+            flows = Arrays.copyOf(flows, k + 1);
+        // All networks number the games the same way as the first, since a
+        // saved flow may be loaded into any of them
+        if (flows[k] == null && k == 0)
+            flows[k] = new EliminationFlow(wins, remaining, against);
+        else if (flows[k] == null)
+            flows[k] = new EliminationFlow(flow(0));
+        return flows[k];
+    }
+
+    /*
+     * The certificate of elimination of team, empty if it is not eliminated.
+     * Only reads the league, so teams can be decided in parallel on
+     * different flow networks.
+     */
+    private SET<String> eliminate(int team, EliminationFlow flow) {
+        SET<String> certs = new SET<>();
 
         // Check for trivial elimination first
-        int best = wins[team] + remaining[team];
-        for (String t : teams()) {
-            int i = getTeamIndex(t);
-            if (i != team && best < wins[i]) {
-                SET<String> certs = new SET<>();
-                certs.add(t);
-                certificates.put(team, certs);
-                return;
-            }
+        int leader = trivialEliminator(team);
+        if (leader >= 0) {
+            certs.add(names[leader]);
+            return certs;
         }
 
         // Solve using mincut algorithm
-        computeMinCut(team);
+        boolean eliminated = savedFlows[team] == null ? flow.solve(team)
+                : flow.solve(team, savedFlows[team]);
+        if (eliminated) {
+            savedFlows[team] = null;
+            for (int i : byName)
+                if (i != team && flow.inCut(i))
+                    certs.add(names[i]);
+        } else {
+            if (savedFlows[team] == null)
+                savedFlows[team] = new int[flow.flowSize()];
+            flow.saveFlow(savedFlows[team]);
+        }
+        return certs;
+    }
+
+    /*
+     * The first team by name with more wins than team can reach, or -1
+     */
+    private int trivialEliminator(int team) {
+        int best = wins[team] + remaining[team];
+        for (int i : byName)
+            if (i != team && best < wins[i])
+                return i;
+        return -1;
     }
 
-    private void computeMinCut(int team) {
+    // set the number of threads eliminatedTeams() uses
+    void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads: " + threads);
+        this.threads = threads;
+    }
+
+    // all eliminated teams; decides every team at once, so later calls of
+    // isEliminated() for any team are answered from the cache
+    public Iterable<String> eliminatedTeams() {
+        computeAll();
+        SET<String> eliminated = new SET<>();
+        for (int i : byName)
+            if (uncertified[i] || !certificates.get(i).isEmpty())
+                eliminated.add(names[i]);
+        return eliminated;
+    }
+
+    private void computeAll() {
+        int decided = 0;
+        for (int i = 0; i < N; i++)
+            if (uncertified[i] || certificates.contains(i))
+                decided++;
+        if (decided == N)
+            return;
+
         /*
-         * To simplify things, we create vertices for all teams
-         * 
-         * vertex 0 - source
-         * vertices 1..(N^2-N)/2 - games
-         * vertices (N^2-N)/2 + 1..(N^2+N)/2 - teams
-         * vertex (N^2+N)/2+1 - target
+         * A team that can win at most as many games as an eliminated team is
+         * eliminated too: if R eliminates x, then R eliminates y, or R - {y}
+         * if y is in R. So in the order of wins + remaining the eliminated
+         * teams come first, and only the boundary needs flows. It is found by
+         * deciding a few teams spread over the undecided range at a time, in
+         * parallel. Teams decided earlier narrow the range from the start.
          */
-        int numGames = N * (N - 1) / 2;
-        int V = numGames + N + 2;
-        FlowNetwork nw = new FlowNetwork(V);
+        long[] keys = new long[N];
+        for (int i = 0; i < N; i++)
+            keys[i] = (long) (wins[i] + remaining[i]) << 32 | i;
+        Arrays.sort(keys);
+        int[] order = new int[N];
+        for (int k = 0; k < N; k++)
+            order[k] = (int) keys[k];
 
-        int x = 1;
-        int teamVertexStart = numGames + 1;
-        for (int i = 0; i < N; i++) {
-            if (i == team)
-                continue;
-            for (int j = i + 1; j < N; j++) {
-                if (j == team)
-                    continue;
-
-                // Edge from source to game
-                nw.addEdge(new FlowEdge(0, x, against[i][j]));
+        // order[0..lo - 1] are eliminated and order[hi..N - 1] are not
+        int lo = 0, hi = N;
+        for (int k = 0; k < N; k++) {
+            SET<String> certs = certificates.get(order[k]);
+            if (uncertified[order[k]] || certs != null && !certs.isEmpty())
+                lo = k + 1;
+            else if (certs != null && hi == N)
+                hi = k;
+        }
 
-                // Edge from game to teams
-                nw.addEdge(new FlowEdge(x, teamVertexStart + i,
-                        Double.POSITIVE_INFINITY));
-                nw.addEdge(new FlowEdge(x, teamVertexStart + j,
-                        Double.POSITIVE_INFINITY));
+        int workers = Math.max(1, Math.min(threads, hi - lo));
+        ExecutorService pool = workers > 1 ? POOL : null;
+        while (lo < hi) {
+            int probes = Math.min(workers, hi - lo);
+            int[] probe = new int[probes];
+            for (int p = 0; p < probes; p++)
+                probe[p] = lo + (int) ((long) (p + 1) * (hi - lo) / (probes + 1));
+            List<SET<String>> results = decide(pool, order, probe);
 
-                x++;
+            int newLo = lo, newHi = hi;
+            for (int p = 0; p < probes; p++) {
+                certificates.put(order[probe[p]], results.get(p));
+                if (results.get(p).isEmpty())
+                    newHi = Math.min(newHi, probe[p]);
+                else
+                    newLo = Math.max(newLo, probe[p] + 1);
             }
+            lo = newLo;
+            hi = newHi;
         }
 
-        int bestForTeam = wins[team] + remaining[team];
-        // Edges from teams to sink
-        for (int i = 0; i < N; i++) {
-            if (i == team)
+        // The teams decided by dominance. Those not eliminated have no
+        // certificate; those eliminated are uncertified, since the
+        // certificate of a stronger team is not the one a query would find
+        for (int k = 0; k < N; k++) {
+            int team = order[k];
+            if (certificates.contains(team) || uncertified[team])
                 continue;
-            nw.addEdge(new FlowEdge(teamVertexStart + i, V - 1, bestForTeam
-                    - wins[i]));
+            if (k < lo)
+                uncertified[team] = true;
+            else
+                certificates.put(team, new SET<String>());
         }
+    }
 
-        SET<String> certs = new SET<>();
-        FordFulkerson ff = new FordFulkerson(nw, 0, V - 1);
-        for (String t : teams()) {
-            int idx = getTeamIndex(t);
-            if (idx == team)
-                continue;
-            if (ff.inCut(teamVertexStart + idx))
-                certs.add(t);
+    /*
+     * Decides the teams at the given positions of order as tasks of pool,
+     * each on its own flow network; without a pool, decides them in
+     * turn on the calling thread
+     */
+    private List<SET<String>> decide(ExecutorService pool, final int[] order,
+            int[] positions) {
+        List<SET<String>> results = new ArrayList<>();
+        if (pool == null) {
+            for (int position : positions)
+                results.add(eliminate(order[position], flow(0)));
+            return results;
+        }
+
+        List<Callable<SET<String>>> tasks = new ArrayList<>();
+        for (int p = 0; p < positions.length; p++) {
+            final int team = order[positions[p]];
+            final EliminationFlow flow = flow(p);
+            tasks.add(new Callable<SET<String>>() {
+                @Override
+                public SET<String> call() {
+                    return eliminate(team, flow);
+                }
+            });
+        }
+        try {
+            for (Future<SET<String>> result : pool.invokeAll(tasks))
+                results.add(result.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
         }
-        certificates.put(team, certs);
+        return results;
     }
 }
@@ -0,0 +1,335 @@
+import java.util.Arrays;
+
+/**
+ * The flow network of the remaining games of a league, for deciding whether
+ * one team is eliminated, stored in int arrays. The network has a vertex for
+ * each pair of teams that still play each other and for each team, and is
+ * built once: solve() only resets the capacities for the team asked about and
+ * finds a maximum flow with Dinic's algorithm, so it allocates nothing.
+ *
+ * The capacities are read from the arrays the network was created with, so
+ * they can change between calls to solve().
+ */
+public class EliminationFlow {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final int[] wins, remaining;
+    private final int[][] against;
+
+    /**
+     * Vertex 0 is the source, vertices 1..games the pairs of teams with games
+     * left between them when the first network of the league was built (the
+     * games of a pair can only run out later), the next N vertices the teams
+     * and the last one the sink. The pair of game g (numbered from 0) is
+     * gameTeams[2g] and gameTeams[2g + 1]; copies of a network share it.
+     */
+    private final int teams, games;
+    private final int[] gameTeams;
+    private final int source, sink;
+
+    /**
+     * The edges leaving vertex v are first[v]..first[v + 1] - 1. Edge e goes
+     * to to[e] with residual capacity cap[e], and rev[e] is the edge in the
+     * opposite direction. Game g is fed by edge sourceEdge[g] and feeds its
+     * teams by gameEdge[2g] and gameEdge[2g + 1], and team i feeds the sink
+     * by sinkEdge[i].
+     */
+    private final int[] first, to, rev, cap;
+    private final int[] sourceEdge, gameEdge, sinkEdge;
+
+    /**
+     * Scratch space of Dinic's algorithm: the BFS level of each vertex (-1 if
+     * it is not reached), the next edge to try from each vertex, the BFS
+     * queue and the edges of the path being extended; and the flow into each
+     * team while a flow is loaded
+     */
+    private final int[] level, next, queue, path, inflow;
+
+    public EliminationFlow(int[] wins, int[] remaining, int[][] against) {
+        this(wins, remaining, against, pairsWithGames(against));
+    }
+
+    // a network of the same league with the same games, numbered the same
+    // way, so that flows saved by either can start the other
+    public EliminationFlow(EliminationFlow network) {
+        this(network.wins, network.remaining, network.against,
+                network.gameTeams);
+    }
+
+    /*
+     * The pairs of teams with games left between them, as in gameTeams
+     */
+    private static int[] pairsWithGames(int[][] against) {
+        int count = 0;
+        for (int i = 0; i < against.length; i++)
+            for (int j = i + 1; j < against.length; j++)
+                if (against[i][j] > 0)
+                    count++;
+        int[] pairs = new int[2 * count];
+        for (int i = 0, g = 0; i < against.length; i++) {
+            for (int j = i + 1; j < against.length; j++) {
+                if (against[i][j] > 0) {
+                    pairs[2 * g] = i;
+                    pairs[2 * g + 1] = j;
+                    g++;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private EliminationFlow(int[] wins, int[] remaining, int[][] against,
+            int[] gameTeams) {
+        this.wins = wins;
+        this.remaining = remaining;
+        this.against = against;
+        this.teams = wins.length;
+        this.games = gameTeams.length / 2;
+        this.gameTeams = gameTeams;
+
+        int V = games + teams + 2;
+        this.source = 0;
+        this.sink = V - 1;
+
+        // Count the edges at each vertex, lay them out by vertex, then pair
+        // each edge with its reverse
+        int[] degree = new int[V];
+        degree[source] = games;
+        for (int g = 0; g < games; g++) {
+            degree[1 + g] = 3;
+            degree[teamVertex(gameTeams[2 * g])]++;
+            degree[teamVertex(gameTeams[2 * g + 1])]++;
+        }
+        for (int i = 0; i < teams; i++)
+            degree[teamVertex(i)]++;
+        degree[sink] = teams;
+
+        this.first = new int[V + 1];
+        for (int v = 0; v < V; v++)
+            first[v + 1] = first[v] + degree[v];
+        int E = first[V];
+        this.to = new int[E];
+        this.rev = new int[E];
+        this.cap = new int[E];
+        this.sourceEdge = new int[games];
+        this.gameEdge = new int[2 * games];
+        this.sinkEdge = new int[teams];
+
+        int[] end = new int[V];
+        System.arraycopy(first, 0, end, 0, V);
+        for (int g = 0; g < games; g++) {
+            sourceEdge[g] = addEdge(end, source, 1 + g);
+            gameEdge[2 * g] = addEdge(end, 1 + g, teamVertex(gameTeams[2 * g]));
+            gameEdge[2 * g + 1] = addEdge(end, 1 + g,
+                    teamVertex(gameTeams[2 * g + 1]));
+        }
+        for (int i = 0; i < teams; i++)
+            sinkEdge[i] = addEdge(end, teamVertex(i), sink);
+
+        this.level = new int[V];
+        this.next = new int[V];
+        this.queue = new int[V];
+        this.path = new int[V];
+        this.inflow = new int[teams];
+    }
+
+    private int teamVertex(int team) {
+        return games + 1 + team;
+    }
+
+    /*
+     * Adds an edge from v to w and its reverse at the ends of the edge lists
+     * of v and w, and returns the index of the edge from v to w
+     */
+    private int addEdge(int[] end, int v, int w) {
+        int e = end[v]++, r = end[w]++;
+        to[e] = w;
+        to[r] = v;
+        rev[e] = r;
+        rev[r] = e;
+        return e;
+    }
+
+    // find a maximum flow for the games of the other teams, if team wins all
+    // its games; returns true if it does not fit, so team is eliminated.
+    // Afterwards inCut() tells the teams of the certificate.
+    public boolean solve(int team) {
+        int total = resetCapacities(team);
+        return maxFlow() < total;
+    }
+
+    // solve(), starting from a flow saved by saveFlow() after an earlier
+    // solve() for the same team. The saved flow is cut down where the
+    // capacities have shrunk since, so after a game has been played only a
+    // few units of flow need to be found again.
+    public boolean solve(int team, int[] start) {
+        if (start.length != flowSize())
+            throw new IllegalArgumentException("Flow of another network");
+        int total = resetCapacities(team);
+        int flow = loadFlow(start);
+        return flow + maxFlow() < total;
+    }
+
+    // number of ints saveFlow() needs
+    public int flowSize() {
+        return 2 * games;
+    }
+
+    // save the flow of the last solve(): for each game, the flow to each of
+    // its two teams
+    public void saveFlow(int[] flow) {
+        for (int k = 0; k < 2 * games; k++)
+            flow[k] = cap[rev[gameEdge[k]]];
+    }
+
+    /*
+     * Sets the capacities for team and returns the capacity out of the
+     * source, which a flow must fill for team not to be eliminated
+     */
+    private int resetCapacities(int team) {
+        int best = wins[team] + remaining[team];
+        int total = 0;
+        for (int g = 0; g < games; g++) {
+            int i = gameTeams[2 * g], j = gameTeams[2 * g + 1];
+            int left = i == team || j == team ? 0 : against[i][j];
+            setCapacity(sourceEdge[g], left);
+            setCapacity(gameEdge[2 * g], INFINITY);
+            setCapacity(gameEdge[2 * g + 1], INFINITY);
+            total += left;
+        }
+        for (int i = 0; i < teams; i++)
+            setCapacity(sinkEdge[i], i == team ? 0 : Math.max(0, best - wins[i]));
+        return total;
+    }
+
+    /*
+     * Puts the saved flow on the network with its new capacities, first
+     * taking away what no longer fits into a game and then what no longer
+     * fits out of a team, and returns its value
+     */
+    private int loadFlow(int[] start) {
+        Arrays.fill(inflow, 0);
+        for (int g = 0; g < games; g++) {
+            int f1 = start[2 * g], f2 = start[2 * g + 1];
+            int excess = f1 + f2 - cap[sourceEdge[g]];
+            if (excess > 0) {
+                int d = Math.min(f1, excess);
+                f1 -= d;
+                f2 -= excess - d;
+            }
+            push(sourceEdge[g], f1 + f2);
+            push(gameEdge[2 * g], f1);
+            push(gameEdge[2 * g + 1], f2);
+            inflow[gameTeams[2 * g]] += f1;
+            inflow[gameTeams[2 * g + 1]] += f2;
+        }
+
+        int flow = 0;
+        for (int i = 0; i < teams; i++) {
+            int t = teamVertex(i);
+            int excess = inflow[i] - cap[sinkEdge[i]];
+            // The edges at a team other than to the sink are the reverses of
+            // the edges from its games, whose residual capacity is the flow
+            for (int e = first[t]; excess > 0 && e < first[t + 1]; e++) {
+                if (e == sinkEdge[i])
+                    continue;
+                int d = Math.min(cap[e], excess);
+                push(e, d);
+                push(rev[sourceEdge[to[e] - 1]], d);
+                excess -= d;
+            }
+            int out = Math.min(inflow[i], cap[sinkEdge[i]]);
+            push(sinkEdge[i], out);
+            flow += out;
+        }
+        return flow;
+    }
+
+    private void push(int e, int flow) {
+        cap[e] -= flow;
+        cap[rev[e]] += flow;
+    }
+
+    private void setCapacity(int e, int capacity) {
+        cap[e] = capacity;
+        cap[rev[e]] = 0;
+    }
+
+    // is the given team on the source side of the minimum cut of the last
+    // solve()?
+    public boolean inCut(int team) {
+        return level[teamVertex(team)] >= 0;
+    }
+
+    /*
+     * Dinic's algorithm: augments along shortest paths of the residual
+     * network until the sink can no longer be reached. The levels of the last
+     * BFS then mark the source side of a minimum cut.
+     */
+    private int maxFlow() {
+        int flow = 0;
+        while (bfs()) {
+            System.arraycopy(first, 0, next, 0, next.length);
+            int f;
+            while ((f = augment()) > 0)
+                flow += f;
+        }
+        return flow;
+    }
+
+    private boolean bfs() {
+        Arrays.fill(level, -1);
+        int head = 0, tail = 0;
+        level[source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = first[v]; e < first[v + 1]; e++) {
+                int w = to[e];
+                if (cap[e] > 0 && level[w] < 0) {
+                    level[w] = level[v] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return level[sink] >= 0;
+    }
+
+    /*
+     * Pushes flow along one path of increasing levels to the sink, found
+     * depth first without recursion, and returns the flow pushed (0 if there
+     * is no path left). Edges that lead nowhere are skipped for the rest of
+     * the phase.
+     */
+    private int augment() {
+        int depth = 0, v = source;
+        while (v != sink) {
+            int e = next[v];
+            while (e < first[v + 1]
+                    && (cap[e] == 0 || level[to[e]] != level[v] + 1))
+                e++;
+            next[v] = e;
+            if (e < first[v + 1]) {
+                path[depth++] = e;
+                v = to[e];
+            } else {
+                if (v == source)
+                    return 0;
+                // A dead end: retreat and skip the edge that led here
+                level[v] = -1;
+                v = to[rev[path[--depth]]];
+                next[v]++;
+            }
+        }
+
+        int f = INFINITY;
+        for (int d = 0; d < depth; d++)
+            f = Math.min(f, cap[path[d]]);
+        for (int d = 0; d < depth; d++) {
+            cap[path[d]] -= f;
+            cap[rev[path[d]]] += f;
+        }
+        return f;
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks BaseballElimination.eliminatedTeams() against single queries: the
+ * same teams are eliminated, and each has the same certificate whether or not
+ * the batch ran first.
+ *
+ * Usage: java EliminatedTeamsTest
+ */
+public class EliminatedTeamsTest {
+
+    private static List<String> certificate(BaseballElimination league,
+            String team) {
+        Iterable<String> certs = league.certificateOfElimination(team);
+        if (certs == null)
+            return null;
+        List<String> list = new ArrayList<>();
+        for (String t : certs)
+            list.add(t);
+        return list;
+    }
+
+    private static void testAgainstSingleQueries() throws Exception {
+        Random random = new Random(2);
+        for (int run = 0; run < 200; run++) {
+            String file = Leagues.random(random, 1 + random.nextInt(16));
+            BaseballElimination batch = new BaseballElimination(file);
+            BaseballElimination single = new BaseballElimination(file);
+            batch.setThreads(1 + random.nextInt(4));
+            List<String> teams = Leagues.teams(single);
+
+            // Some teams decided before the batch, some after
+            for (String team : teams)
+                if (random.nextInt(4) == 0)
+                    batch.isEliminated(team);
+            List<String> eliminated = new ArrayList<>();
+            for (String team : batch.eliminatedTeams())
+                eliminated.add(team);
+
+            List<String> expected = new ArrayList<>();
+            for (String team : teams)
+                if (single.isEliminated(team))
+                    expected.add(team);
+            Leagues.check(eliminated.equals(expected), "Eliminated teams "
+                    + eliminated + ", expected " + expected);
+
+            for (String team : teams) {
+                Leagues.check(batch.isEliminated(team) == single
+                        .isEliminated(team), "Status of " + team);
+                List<String> certs = certificate(batch, team);
+                Leagues.check(certs == null ? certificate(single, team) == null
+                        : certs.equals(certificate(single, team)),
+                        "Certificate of " + team);
+                if (certs != null)
+                    Leagues.checkCertificate(batch, team);
+            }
+        }
+    }
+
+    // a second batch after games have been played decides the teams they
+    // affect again, and leaves the eliminated teams eliminated
+    private static void testBatchAfterGames() throws Exception {
+        Random random = new Random(5);
+        for (int run = 0; run < 50; run++) {
+            BaseballElimination league = new BaseballElimination(
+                    Leagues.random(random, 2 + random.nextInt(12)));
+            league.setThreads(1 + random.nextInt(4));
+            List<String> before = new ArrayList<>();
+            for (String team : league.eliminatedTeams())
+                before.add(team);
+
+            List<String> teams = Leagues.teams(league);
+            String t = teams.get(random.nextInt(teams.size()));
+            for (String u : teams) {
+                if (league.against(t, u) > 0) {
+                    boolean won = random.nextBoolean();
+                    league.recordGame(won ? t : u, won ? u : t);
+                }
+            }
+
+            BaseballElimination fresh = new BaseballElimination(
+                    Leagues.write(league));
+            List<String> after = new ArrayList<>();
+            for (String team : league.eliminatedTeams())
+                after.add(team);
+            Leagues.check(after.containsAll(before), "Teams revived");
+            for (String team : teams)
+                Leagues.check(after.contains(team) == fresh.isEliminated(team),
+                        "Status of " + team);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        testAgainstSingleQueries();
+        testBatchAfterGames();
+        StdOut.println("EliminatedTeamsTest passed");
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.Random;
+
+/**
+ * Checks EliminationFlow against the algs4 FordFulkerson on the flow network
+ * of the same league, built with FlowNetwork: the same teams are eliminated
+ * with the same minimum cut, whether the flow starts from scratch or from a
+ * flow saved before games were played.
+ *
+ * Usage: java EliminationFlowTest
+ */
+public class EliminationFlowTest {
+
+    /*
+     * Whether team is eliminated according to FordFulkerson, with inCut[i]
+     * set to whether team i is on the source side of the minimum cut
+     */
+    private static boolean oracle(int[] wins, int[] remaining,
+            int[][] against, int team, boolean[] inCut) {
+        int N = wins.length;
+        int games = N * (N - 1) / 2;
+        int source = games + N, sink = source + 1;
+        FlowNetwork network = new FlowNetwork(sink + 1);
+        int best = wins[team] + remaining[team];
+        double total = 0;
+        for (int i = 0, g = 0; i < N; i++) {
+            for (int j = i + 1; j < N; j++, g++) {
+                if (i == team || j == team)
+                    continue;
+                network.addEdge(new FlowEdge(source, g, against[i][j]));
+                network.addEdge(new FlowEdge(g, games + i,
+                        Double.POSITIVE_INFINITY));
+                network.addEdge(new FlowEdge(g, games + j,
+                        Double.POSITIVE_INFINITY));
+                total += against[i][j];
+            }
+        }
+        for (int i = 0; i < N; i++)
+            if (i != team)
+                network.addEdge(new FlowEdge(games + i, sink,
+                        Math.max(0, best - wins[i])));
+
+        FordFulkerson ff = new FordFulkerson(network, source, sink);
+        for (int i = 0; i < N; i++)
+            inCut[i] = i != team && ff.inCut(games + i);
+        return ff.value() < total;
+    }
+
+    private static void check(EliminationFlow flow, boolean eliminated,
+            int[] wins, int[] remaining, int[][] against, int team) {
+        boolean[] inCut = new boolean[wins.length];
+        Leagues.check(eliminated == oracle(wins, remaining, against, team,
+                inCut), "Status of team " + team);
+        if (eliminated)
+            for (int i = 0; i < wins.length; i++)
+                Leagues.check(i == team || flow.inCut(i) == inCut[i],
+                        "Cut of team " + team + " at team " + i);
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(4);
+        for (int run = 0; run < 300; run++) {
+            int N = 1 + random.nextInt(10);
+            int[] wins = new int[N], remaining = new int[N];
+            int[][] against = new int[N][N];
+            for (int i = 0; i < N; i++) {
+                wins[i] = random.nextInt(20);
+                for (int j = i + 1; j < N; j++) {
+                    int games = random.nextInt(3) == 0 ? 0 : random.nextInt(6);
+                    against[i][j] = games;
+                    against[j][i] = games;
+                    remaining[i] += games;
+                    remaining[j] += games;
+                }
+            }
+
+            EliminationFlow flow = new EliminationFlow(wins, remaining, against);
+            int[][] saved = new int[N][];
+            for (int team = 0; team < N; team++) {
+                check(flow, flow.solve(team), wins, remaining, against, team);
+                saved[team] = new int[flow.flowSize()];
+                flow.saveFlow(saved[team]);
+            }
+
+            // Play some games, then start each team from its old flow, on a
+            // copy of the network that numbers the games the same way
+            for (int k = random.nextInt(10); k > 0; k--) {
+                int i = random.nextInt(N), j = random.nextInt(N);
+                if (against[i][j] == 0)
+                    continue;
+                wins[i]++;
+                remaining[i]--;
+                remaining[j]--;
+                against[i][j]--;
+                against[j][i]--;
+            }
+            EliminationFlow copy = new EliminationFlow(flow);
+            for (int team = 0; team < N; team++)
+                check(copy, copy.solve(team, saved[team]), wins, remaining,
+                        against, team);
+        }
+        StdOut.println("EliminationFlowTest passed");
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random leagues written to temporary files in the input format of
+ * BaseballElimination, and checks shared by its tests.
+ */
+public class Leagues {
+
+    // a league of the given number of teams, with about a quarter of the
+    // pairs of teams done with each other
+    public static String random(Random random, int teams) throws IOException {
+        int[][] against = new int[teams][teams];
+        for (int i = 0; i < teams; i++) {
+            for (int j = i + 1; j < teams; j++) {
+                int games = random.nextInt(4) == 0 ? 0 : random.nextInt(8);
+                against[i][j] = games;
+                against[j][i] = games;
+            }
+        }
+        String[] names = new String[teams];
+        int[] wins = new int[teams], losses = new int[teams];
+        for (int i = 0; i < teams; i++) {
+            names[i] = "Team" + i;
+            wins[i] = 40 + random.nextInt(30);
+            losses[i] = random.nextInt(40);
+        }
+        return write(names, wins, losses, against);
+    }
+
+    // the current standings of league in a new file
+    public static String write(BaseballElimination league) throws IOException {
+        List<String> names = teams(league);
+        int n = names.size();
+        int[] wins = new int[n], losses = new int[n];
+        int[][] against = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            wins[i] = league.wins(names.get(i));
+            losses[i] = league.losses(names.get(i));
+            for (int j = 0; j < n; j++)
+                against[i][j] = league.against(names.get(i), names.get(j));
+        }
+        return write(names.toArray(new String[n]), wins, losses, against);
+    }
+
+    private static String write(String[] names, int[] wins, int[] losses,
+            int[][] against) throws IOException {
+        File file = File.createTempFile("league", ".txt");
+        file.deleteOnExit();
+        PrintWriter out = new PrintWriter(file);
+        out.println(wins.length);
+        for (int i = 0; i < wins.length; i++) {
+            int remaining = 0;
+            for (int games : against[i])
+                remaining += games;
+            out.print(names[i] + " " + wins[i] + " " + losses[i] + " "
+                    + remaining);
+            for (int games : against[i])
+                out.print(" " + games);
+            out.println();
+        }
+        out.close();
+        return file.getPath();
+    }
+
+    public static List<String> teams(BaseballElimination league) {
+        List<String> names = new ArrayList<>();
+        for (String team : league.teams())
+            names.add(team);
+        return names;
+    }
+
+    // throws unless the certificate of team is a set of other teams that
+    // cannot all end up with at most as many wins as team
+    public static void checkCertificate(BaseballElimination league,
+            String team) {
+        List<String> R = new ArrayList<>();
+        for (String t : league.certificateOfElimination(team))
+            R.add(t);
+        long total = 0;
+        for (int i = 0; i < R.size(); i++) {
+            total += league.wins(R.get(i));
+            for (int j = i + 1; j < R.size(); j++)
+                total += league.against(R.get(i), R.get(j));
+        }
+        if (R.isEmpty() || R.contains(team) || total <= (long) R.size()
+                * (league.wins(team) + league.remaining(team)))
+            throw new AssertionError("Not a certificate for " + team + ": "
+                    + R);
+    }
+
+    public static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
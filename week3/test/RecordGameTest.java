@@ -0,0 +1,125 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks BaseballElimination.recordGame() against a league read afresh from
+ * the standings after each game, status and certificate, with single and
+ * batch queries mixed between the games.
+ *
+ * Usage: java RecordGameTest
+ */
+public class RecordGameTest {
+
+    // a random game still to be played in league, as winner and loser
+    private static String[] randomGame(BaseballElimination league,
+            Random random) {
+        List<String[]> games = new ArrayList<>();
+        for (String t : league.teams())
+            for (String u : league.teams())
+                if (league.against(t, u) > 0)
+                    games.add(new String[] { t, u });
+        return games.isEmpty() ? null : games.get(random.nextInt(games.size()));
+    }
+
+    private static void checkAgainstFresh(BaseballElimination league)
+            throws Exception {
+        BaseballElimination fresh = new BaseballElimination(
+                Leagues.write(league));
+        for (String team : league.teams()) {
+            Leagues.check(league.isEliminated(team) == fresh.isEliminated(team),
+                    "Status of " + team);
+            Leagues.check(certificate(league, team).equals(
+                    certificate(fresh, team)), "Certificate of " + team);
+            if (league.isEliminated(team))
+                Leagues.checkCertificate(league, team);
+        }
+    }
+
+    // the certificate of team as a list, empty if it is not eliminated
+    private static List<String> certificate(BaseballElimination league,
+            String team) {
+        List<String> certs = new ArrayList<>();
+        Iterable<String> R = league.certificateOfElimination(team);
+        if (R != null)
+            for (String t : R)
+                certs.add(t);
+        return certs;
+    }
+
+    // Flows saved on one network must start a flow on another: here a pair
+    // runs out of games after a single query built the first network and
+    // before the batch builds the others
+    private static void testNetworksShareGames() throws Exception {
+        Random random = new Random(7);
+        for (int run = 0; run < 40; run++) {
+            BaseballElimination league = new BaseballElimination(
+                    Leagues.random(random, 2 + random.nextInt(12)));
+            league.setThreads(4);
+            List<String> teams = Leagues.teams(league);
+            league.isEliminated(teams.get(random.nextInt(teams.size())));
+
+            String[] game = randomGame(league, random);
+            while (game != null && league.against(game[0], game[1]) > 0)
+                league.recordGame(game[0], game[1]);
+            league.eliminatedTeams();
+            game = randomGame(league, random);
+            if (game != null)
+                league.recordGame(game[0], game[1]);
+            checkAgainstFresh(league);
+        }
+    }
+
+    private static void testRandomSeasons() throws Exception {
+        Random random = new Random(1);
+        for (int run = 0; run < 40; run++) {
+            BaseballElimination league = new BaseballElimination(
+                    Leagues.random(random, 1 + random.nextInt(12)));
+            league.setThreads(1 + random.nextInt(4));
+            List<String> teams = Leagues.teams(league);
+            for (int step = 0; step < 15; step++) {
+                if (random.nextInt(3) == 0)
+                    league.eliminatedTeams();
+                else
+                    league.isEliminated(teams.get(random.nextInt(teams.size())));
+                checkAgainstFresh(league);
+                for (int k = random.nextInt(4); k > 0; k--) {
+                    String[] game = randomGame(league, random);
+                    if (game != null)
+                        league.recordGame(game[0], game[1]);
+                }
+            }
+        }
+    }
+
+    private static void testUpdatesStandings() throws Exception {
+        BaseballElimination league = new BaseballElimination(
+                Leagues.random(new Random(3), 4));
+        String[] game = randomGame(league, new Random(3));
+        String w = game[0], l = game[1];
+        int wins = league.wins(w), losses = league.losses(l);
+        int remaining = league.remaining(w), against = league.against(w, l);
+        league.recordGame(w, l);
+        Leagues.check(league.wins(w) == wins + 1, "wins");
+        Leagues.check(league.losses(l) == losses + 1, "losses");
+        Leagues.check(league.remaining(w) == remaining - 1, "remaining");
+        Leagues.check(league.against(w, l) == against - 1
+                && league.against(l, w) == against - 1, "against");
+
+        while (league.against(w, l) > 0)
+            league.recordGame(w, l);
+        try {
+            league.recordGame(l, w);
+            throw new AssertionError("Recorded a game that was not left");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        testUpdatesStandings();
+        testNetworksShareGames();
+        testRandomSeasons();
+        StdOut.println("RecordGameTest passed");
+    }
+}